@@ -22,15 +22,20 @@
 package leadtools.camera;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.util.SparseArrayCompat;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
@@ -65,6 +70,13 @@ class Camera1
 
     private final SizeMap mPictureSizes = new SizeMap();
 
+    private final CameraCapabilityCache mCapabilityCache;
+
+    /**
+     * What {@link #mCapabilityCache} knew of the camera being started, or {@code null}
+     */
+    private CameraCapabilityCache.Entry mCachedCameraInfo;
+
     private AspectRatio mAspectRatio;
 
     private boolean mShowingPreview;
@@ -79,41 +91,138 @@ class Camera1
 
     private int mMaxPreviewImages = Constants.DEFAULT_MAX_PREVIEW_IMAGES;
 
+    private int mTargetFrameRate = Constants.DEFAULT_TARGET_FRAME_RATE;
+
+    /**
+     * Preview frame rate range of the opened camera before any target was applied, in frames per
+     * 1000 seconds
+     */
+    private final int[] mDefaultFpsRange = new int[2];
+
     private int mCaptureMode = Constants.CONTINUOUS;
 
+    private int mPreviewFormat = Constants.PREVIEW_FORMAT_NV21;
+
     private static final String TAG = "Camera1";
 
     private boolean mHasPreviewedFrame;
 
+    /**
+     * Preview size and {@link ImageFormat} negotiated by {@link #adjustCameraParameters()}, so
+     * that frames are described without querying the camera parameters
+     */
+    private int mPreviewWidth;
+
+    private int mPreviewHeight;
+
+    private int mPreviewImageFormat = ImageFormat.NV21;
+
     private Camera.PreviewCallback mPreviewCallback = new Camera.PreviewCallback()
     {
         @Override
         public void onPreviewFrame(byte[] bytes, Camera camera)
         {
             mHasPreviewedFrame = true;
+            if (camera == null || bytes == null) return;
+            mFrameStats.onAcquired();
+            if (mQueuedBuffers.remove(bytes))
+                mDeliveredBuffers.add(bytes);
+            if (mPreviewFormat == Constants.PREVIEW_FORMAT_YUV_420_888)
+            {
+                deliverFrame(bytes);
+                return;
+            }
             try
             {
-                if (camera == null) return;
-                Camera.Parameters parameters = camera.getParameters();
-                Camera.Size previewSize = parameters.getPreviewSize();
-
                 mCallback.onPreviewFrame(new LeadSize(mPreview.getView()
                                                               .getMeasuredWidth(),
                                                       mPreview.getView()
                                                               .getMeasuredHeight(), bytes,
-                                                      mPreview.getWidth(), mPreview.getHeight()));
+                                                      mPreviewWidth, mPreviewHeight));
             }
             catch (Exception ex)
             {
                 Log.e(TAG, ex.getMessage());
             }
+            finally
+            {
+                recycleCallbackBuffer(bytes);
+                mFrameStats.onReleased();
+            }
         }
     };
 
-    Camera1(Callback callback, PreviewImpl preview)
+    /**
+     * Preview buffers currently queued with {@link #mCamera}.
+     */
+    private final ArrayList<byte[]> mQueuedBuffers = new ArrayList<>();
+
+    /**
+     * Preview buffers handed to a callback and not yet given back.
+     */
+    private final ArrayList<byte[]> mDeliveredBuffers = new ArrayList<>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Wraps an NV21 preview buffer as a {@link LeadFrame}: a full resolution Y plane followed by
+     * interleaved V/U samples, exposed as U and V planes with a pixel stride of 2.
+     */
+    private void deliverFrame(final byte[] nv21)
+    {
+        int width = mPreviewWidth;
+        int height = mPreviewHeight;
+        int lumaSize = width * height;
+        int chromaSize = nv21.length - lumaSize;
+        LeadFrame.Plane[] planes = new LeadFrame.Plane[] {
+                new LeadFrame.Plane(ByteBuffer.wrap(nv21, 0, lumaSize)
+                                              .slice(), width, 1),
+                new LeadFrame.Plane(ByteBuffer.wrap(nv21, lumaSize + 1, chromaSize - 1)
+                                              .slice(), width, 2),
+                new LeadFrame.Plane(ByteBuffer.wrap(nv21, lumaSize, chromaSize - 1)
+                                              .slice(), width, 2)
+        };
+        LeadFrame frame = new LeadFrame(mPreview.getView()
+                                                .getMeasuredWidth(),
+                                        mPreview.getView()
+                                                .getMeasuredHeight(),
+                                        width, height, System.nanoTime(), planes,
+                                        new LeadFrame.Releaser()
+                                        {
+                                            @Override
+                                            public void onFrameReleased(LeadFrame frame)
+                                            {
+                                                mFrameStats.onReleased();
+                                                if (Looper.myLooper() == Looper.getMainLooper())
+                                                {
+                                                    recycleCallbackBuffer(nv21);
+                                                    return;
+                                                }
+                                                mMainHandler.post(new Runnable()
+                                                {
+                                                    @Override
+                                                    public void run()
+                                                    {
+                                                        recycleCallbackBuffer(nv21);
+                                                    }
+                                                });
+                                            }
+                                        });
+        try
+        {
+            mCallback.onFrameAvailable(frame);
+        }
+        finally
+        {
+            frame.release();
+        }
+    }
+
+    Camera1(Callback callback, PreviewImpl preview, Context context)
     {
         super(callback, preview);
         mCameraSensorOrientation = 90;
+        mCapabilityCache = new CameraCapabilityCache(context, "camera1");
         preview.setCallback(new PreviewImpl.Callback()
         {
             @Override
@@ -167,9 +276,57 @@ class Camera1
         }, 3000);
     }
 
+    /**
+     * Installs {@link #mPreviewCallback} with {@link #mMaxPreviewImages} preview buffers taken from
+     * {@link #mBufferPool}, sized for the current preview size.
+     */
     private void setPreviewCallback()
     {
-        mCamera.setPreviewCallback(mPreviewCallback);
+        clearCallbackBuffers();
+        int bufferSize = mPreviewWidth * mPreviewHeight *
+                ImageFormat.getBitsPerPixel(mPreviewImageFormat) / 8;
+        mCamera.setPreviewCallbackWithBuffer(mPreviewCallback);
+        for (int i = 0; i < mMaxPreviewImages; i++)
+        {
+            byte[] buffer = mBufferPool.acquire(bufferSize);
+            if (buffer == null)
+                break;
+            mQueuedBuffers.add(buffer);
+            mCamera.addCallbackBuffer(buffer);
+        }
+    }
+
+    /**
+     * Removes the preview callback and gives the queued preview buffers back to
+     * {@link #mBufferPool}. Buffers still held by a consumer go back to the pool once recycled.
+     */
+    private void clearCallbackBuffers()
+    {
+        if (mCamera != null)
+            mCamera.setPreviewCallbackWithBuffer(null);
+        for (byte[] buffer : mQueuedBuffers)
+        {
+            mBufferPool.release(buffer);
+        }
+        mQueuedBuffers.clear();
+        mDeliveredBuffers.clear();
+    }
+
+    /**
+     * Queues a delivered preview buffer with the camera again, or returns it to
+     * {@link #mBufferPool} if the camera or its buffers changed in the meantime.
+     */
+    private void recycleCallbackBuffer(byte[] buffer)
+    {
+        if (mCamera != null && mDeliveredBuffers.remove(buffer))
+        {
+            mQueuedBuffers.add(buffer);
+            mCamera.addCallbackBuffer(buffer);
+        }
+        else
+        {
+            mBufferPool.release(buffer);
+        }
     }
 
     @Override
@@ -293,12 +450,85 @@ class Camera1
         return mMaxPreviewSizeMP;
     }
 
+    @Override
+    void setTargetFrameRate(int frameRate)
+    {
+        frameRate = Math.max(0, frameRate);
+        if (mTargetFrameRate == frameRate)
+            return;
+        mTargetFrameRate = frameRate;
+        if (isCameraOpened())
+        {
+            // The frame rate can change while previewing, without a restart
+            setFrameRateInternal();
+            mCamera.setParameters(mCameraParameters);
+        }
+    }
+
+    @Override
+    int getTargetFrameRate()
+    {
+        return mTargetFrameRate;
+    }
+
+    /**
+     * Sets the preview frame rate range of {@link #mCameraParameters} for
+     * {@link #mTargetFrameRate}, choosing as {@code Camera2} does: the lowest maximum that reaches
+     * the target, then the highest minimum.
+     */
+    private void setFrameRateInternal()
+    {
+        if (mTargetFrameRate <= 0)
+        {
+            mCameraParameters.setPreviewFpsRange(mDefaultFpsRange[0], mDefaultFpsRange[1]);
+            return;
+        }
+        List<int[]> ranges = mCameraParameters.getSupportedPreviewFpsRange();
+        if (ranges == null || ranges.isEmpty())
+            return;
+        int target = mTargetFrameRate * 1000;
+        int[] best = null;
+        for (int[] range : ranges)
+        {
+            int max = range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            int min = range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
+            if (best == null)
+            {
+                best = range;
+                continue;
+            }
+            int bestMax = best[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            int bestMin = best[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
+            boolean reaches = max >= target;
+            boolean bestReaches = bestMax >= target;
+            if (reaches != bestReaches)
+            {
+                if (reaches)
+                    best = range;
+            }
+            else if (max != bestMax)
+            {
+                if (reaches ? max < bestMax : max > bestMax)
+                    best = range;
+            }
+            else if (min > bestMin)
+            {
+                best = range;
+            }
+        }
+        mCameraParameters.setPreviewFpsRange(best[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                                             best[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+    }
+
     @Override
     void setMaxPreviewImages(int maxPreviewImages)
     {
-        // no-op, Camera1 images are tied to Java primitive byte arrays
-        // on Dalvik/ART heap that are subject to GC, not native buffers
-        // that need to be deallocated manually
+        if (maxPreviewImages < 2)
+            return;
+        mMaxPreviewImages = maxPreviewImages;
+        mBufferPool.setCapacity(maxPreviewImages);
+        if (isCameraOpened() && mCaptureMode == Constants.CONTINUOUS)
+            setPreviewCallback();
     }
 
     @Override
@@ -438,6 +668,18 @@ class Camera1
         return mCaptureMode;
     }
 
+    @Override
+    void setPreviewFormat(int previewFormat)
+    {
+        mPreviewFormat = previewFormat;
+    }
+
+    @Override
+    int getPreviewFormat()
+    {
+        return mPreviewFormat;
+    }
+
     @Override
     boolean hasFlash()
     {
@@ -459,10 +701,18 @@ class Camera1
     }
 
     /**
-     * This rewrites {@link #mCameraId} and {@link #mCameraInfo}.
+     * This rewrites {@link #mCameraId}, {@link #mCameraInfo} and {@link #mCachedCameraInfo}.
      */
     private void chooseCamera()
     {
+        mCachedCameraInfo = mCapabilityCache.getByFacing(mFacing);
+        if (mCachedCameraInfo != null)
+        {
+            mCameraId = Integer.parseInt(mCachedCameraInfo.cameraId);
+            mCameraInfo.facing = mCachedCameraInfo.facing;
+            mCameraInfo.orientation = mCachedCameraInfo.sensorOrientation;
+            return;
+        }
         for (int i = 0, count = Camera.getNumberOfCameras(); i < count; i++)
         {
             Camera.getCameraInfo(i, mCameraInfo);
@@ -481,20 +731,28 @@ class Camera1
         {
             releaseCamera();
         }
-        mCamera = Camera.open(mCameraId);
-        mCameraParameters = mCamera.getParameters();
-        // Supported preview sizes
-        mPreviewSizes.clear();
-        for (Camera.Size size : mCameraParameters.getSupportedPreviewSizes())
+        try
         {
-            mPreviewSizes.add(new Size(size.width, size.height));
+            mCamera = Camera.open(mCameraId);
         }
-        // Supported picture sizes;
-        mPictureSizes.clear();
-        for (Camera.Size size : mCameraParameters.getSupportedPictureSizes())
+        catch (RuntimeException e)
+        {
+            if (mCachedCameraInfo == null)
+                throw e;
+            // The cached camera may no longer exist; discover the cameras again and retry once
+            Log.w(TAG, "Failed to open cached camera " + mCameraId, e);
+            mCapabilityCache.clear();
+            chooseCamera();
+            mCamera = Camera.open(mCameraId);
+        }
+        mCameraParameters = mCamera.getParameters();
+        mCameraParameters.getPreviewFpsRange(mDefaultFpsRange);
+        if (mCachedCameraInfo == null)
         {
-            mPictureSizes.add(new Size(size.width, size.height));
+            mCachedCameraInfo = collectCameraInfo();
+            mCapabilityCache.put(mFacing, mCachedCameraInfo);
         }
+        mCachedCameraInfo.fill(mPreviewSizes, mPictureSizes);
         // AspectRatio
         if (mAspectRatio == null)
         {
@@ -505,6 +763,28 @@ class Camera1
         mCallback.onCameraOpened();
     }
 
+    /**
+     * Collects the supported sizes from {@link #mCameraParameters}.
+     */
+    private CameraCapabilityCache.Entry collectCameraInfo()
+    {
+        // Supported preview sizes
+        List<Size> previewSizes = new ArrayList<>();
+        for (Camera.Size size : mCameraParameters.getSupportedPreviewSizes())
+        {
+            previewSizes.add(new Size(size.width, size.height));
+        }
+        // Supported picture sizes;
+        List<Size> pictureSizes = new ArrayList<>();
+        for (Camera.Size size : mCameraParameters.getSupportedPictureSizes())
+        {
+            pictureSizes.add(new Size(size.width, size.height));
+        }
+        return new CameraCapabilityCache.Entry(String.valueOf(mCameraId), mCameraInfo.facing,
+                                               mCameraInfo.orientation, previewSizes,
+                                               pictureSizes);
+    }
+
     private AspectRatio chooseAspectRatio()
     {
         AspectRatio r = null;
@@ -550,7 +830,19 @@ class Camera1
         mCameraParameters.setRotation(calcCameraRotation(mDisplayOrientation));
         setAutoFocusInternal(mAutoFocus);
         setFlashInternal(mFlash);
+        setFrameRateInternal();
         mCamera.setParameters(mCameraParameters);
+        // Read back once what the driver settled on; frames are described from these values
+        Camera.Parameters negotiated = mCamera.getParameters();
+        Camera.Size negotiatedSize = negotiated.getPreviewSize();
+        mPreviewWidth = negotiatedSize.width;
+        mPreviewHeight = negotiatedSize.height;
+        mPreviewImageFormat = negotiated.getPreviewFormat();
+        if (mShowingPreview && mCaptureMode == Constants.CONTINUOUS)
+        {
+            // Preview buffers are sized for the previous preview size
+            setPreviewCallback();
+        }
         if (mShowingPreview)
         {
             mCamera.startPreview();
@@ -608,7 +900,7 @@ class Camera1
     {
         if (mCamera != null)
         {
-            mCamera.setPreviewCallback(null);
+            clearCallbackBuffers();
             // Not needed
 //         SurfaceHolder holder = mPreview.getSurfaceHolder();
 //         if (holder != null) {
@@ -46,14 +46,18 @@ import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.RequiresApi;
 import android.util.Log;
+import android.util.Range;
 import android.util.SparseIntArray;
 import android.view.Surface;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 class Camera2
@@ -72,6 +76,8 @@ class Camera2
 
     private final CameraManager mCameraManager;
 
+    private final CameraCapabilityCache mCapabilityCache;
+
     private final CameraDevice.StateCallback mCameraDeviceCallback
             = new CameraDevice.StateCallback()
     {
@@ -104,6 +110,8 @@ class Camera2
             //https://github.com/googlesamples/android-Camera2Video/issues/2
             if (!(mConfigFailureCount >= 2))
             {
+                // The cached camera may be what failed; discover it again
+                mCapabilityCache.clear();
                 stop();
                 mCallback.onCameraClosed();
                 start();
@@ -127,6 +135,7 @@ class Camera2
             mCaptureSession = session;
             updateAutoFocus();
             updateFlash();
+            updateFrameRate();
             try
             {
                 HandlerThread backgroundThread = new HandlerThread("CameraPreview");
@@ -269,18 +278,38 @@ class Camera2
 
     private int mMaxPreviewImages = Constants.DEFAULT_MAX_PREVIEW_IMAGES;
 
-    private int mOpenImages = 0;
+    private int mTargetFrameRate = Constants.DEFAULT_TARGET_FRAME_RATE;
+
+    /**
+     * Set when {@link Constants#BACKPRESSURE_BLOCK} left frames queued, so that the next release
+     * resumes delivery
+     */
+    private final AtomicBoolean mDeliveryDeferred = new AtomicBoolean();
 
     private Handler mBackgroundHandler;
 
+    /**
+     * Delivers preview frames and pictures, so that conversion and the frame callbacks never run
+     * on the main thread. Separate from {@link #mBackgroundHandler}, which serves the capture
+     * session.
+     */
+    private HandlerThread mFrameThread;
+
+    private Handler mFrameHandler;
+
     private int mConfigFailureCount = 0;
 
     private int mCaptureMode = Constants.CONTINUOUS;
 
+    private int mPreviewFormat = Constants.PREVIEW_FORMAT_NV21;
+
     Camera2(Callback callback, PreviewImpl preview, Context context)
     {
         super(callback, preview);
         mCameraManager = (CameraManager)context.getSystemService(Context.CAMERA_SERVICE);
+        // Preview sizes are those of the preview's output class
+        mCapabilityCache = new CameraCapabilityCache(context, "camera2." + preview.getOutputClass()
+                                                                              .getSimpleName());
         mPreview.setCallback(new PreviewImpl.Callback()
         {
             @Override
@@ -299,10 +328,29 @@ class Camera2
     @Override
     void start()
     {
-        chooseCameraIdByFacing();
-        collectCameraInfo();
+        int requestedFacing = mFacing;
+        boolean cached = loadCameraInfo();
+        startFrameThread();
         prepareImageReaders();
-        startOpeningCamera();
+        try
+        {
+            startOpeningCamera();
+        }
+        catch (RuntimeException e)
+        {
+            if (!cached)
+                throw e;
+            // The cached camera may no longer exist; discover the cameras again and retry once
+            Log.w(TAG, "Failed to open cached camera " + mCameraId, e);
+            mCapabilityCache.clear();
+            stop();
+            mFacing = requestedFacing;
+            start();
+            return;
+        }
+        // Not needed before the device is opened; when the cache spared the query, it runs while
+        // the device opens
+        getCameraCharacteristics();
     }
 
     @Override
@@ -339,6 +387,7 @@ class Camera2
             mImageReaderContinuous.close();
             mImageReaderContinuous = null;
         }
+        stopFrameThread();
 
         if (mPreview instanceof TextureViewPreview && CameraView.isSamsungDevice())
         {
@@ -382,8 +431,7 @@ class Camera2
     @Override
     void setAspectRatio(AspectRatio ratio)
     {
-        chooseCameraIdByFacing();
-        collectCameraInfo();
+        loadCameraInfo();
         if (ratio == null || ratio.equals(mAspectRatio) ||
                 !mPreviewSizes.ratios()
                               .contains(ratio))
@@ -426,12 +474,48 @@ class Camera2
         return mMaxPreviewSizeMP;
     }
 
+    @Override
+    void setTargetFrameRate(int frameRate)
+    {
+        frameRate = Math.max(0, frameRate);
+        if (mTargetFrameRate == frameRate)
+            return;
+        mTargetFrameRate = frameRate;
+        if (mPreviewRequestBuilder != null && mCaptureSession != null)
+        {
+            // Only the repeating request changes; the session and its streams are kept
+            updateFrameRate();
+            try
+            {
+                mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
+                                                    mCaptureMode == Constants.SINGLE ?
+                                                            mCaptureCallback : null,
+                                                    mBackgroundHandler);
+            }
+            catch (CameraAccessException e)
+            {
+                Log.e(TAG, "Failed to apply the target frame rate", e);
+            }
+            catch (IllegalStateException e)
+            {
+                Log.e(TAG, "Failed to apply the target frame rate", e);
+            }
+        }
+    }
+
+    @Override
+    int getTargetFrameRate()
+    {
+        return mTargetFrameRate;
+    }
+
     @Override
     void setMaxPreviewImages(int maxPreviewImages)
     {
         if (maxPreviewImages < 2)
             return;
         mMaxPreviewImages = maxPreviewImages;
+        mBufferPool.setCapacity(maxPreviewImages);
         if (isCameraOpened())
         {
             stop();
@@ -627,11 +711,69 @@ class Camera2
     }
 
     /**
-     * <p>Collects some information from {@link #mCameraCharacteristics}.</p>
-     * <p>This rewrites {@link #mPreviewSizes}, {@link #mPictureSizes}, and optionally,
-     * {@link #mAspectRatio}.</p>
+     * <p>Chooses the camera and collects its information, from {@link #mCapabilityCache} when it
+     * is known there, or else from the camera service, in which case the cache is updated.</p>
+     * <p>This rewrites {@link #mCameraId}, {@link #mFacing}, {@link #mPreviewSizes},
+     * {@link #mPictureSizes}, and optionally {@link #mAspectRatio}. {@link #mCameraCharacteristics}
+     * is only kept if the camera did not change; see {@link #getCameraCharacteristics()}.</p>
+     *
+     * @return {@code true} if the information came from {@link #mCapabilityCache}.
      */
-    private void collectCameraInfo()
+    private boolean loadCameraInfo()
+    {
+        boolean cached = true;
+        CameraCapabilityCache.Entry entry = mCapabilityCache.getByFacing(mFacing);
+        if (entry == null)
+        {
+            int requestedFacing = mFacing;
+            chooseCameraIdByFacing();
+            entry = collectCameraInfo();
+            mCapabilityCache.put(requestedFacing, entry);
+            cached = false;
+        }
+        else if (!entry.cameraId.equals(mCameraId))
+        {
+            mCameraCharacteristics = null;
+        }
+        mCameraId = entry.cameraId;
+        mFacing = entry.facing;
+        mCameraSensorOrientation = entry.sensorOrientation;
+        entry.fill(mPreviewSizes, mPictureSizes);
+        if (!mPreviewSizes.ratios()
+                          .contains(mAspectRatio))
+        {
+            mAspectRatio = mPreviewSizes.ratios()
+                                        .iterator()
+                                        .next();
+        }
+        return cached;
+    }
+
+    /**
+     * Returns the characteristics of {@link #mCameraId}, querying them if
+     * {@link #loadCameraInfo()} did not need to.
+     */
+    private CameraCharacteristics getCameraCharacteristics()
+    {
+        if (mCameraCharacteristics == null)
+        {
+            try
+            {
+                mCameraCharacteristics = mCameraManager.getCameraCharacteristics(mCameraId);
+            }
+            catch (CameraAccessException e)
+            {
+                throw new RuntimeException("Failed to get camera characteristics: " + mCameraId, e);
+            }
+        }
+        return mCameraCharacteristics;
+    }
+
+    /**
+     * Collects the supported sizes and the sensor orientation from
+     * {@link #mCameraCharacteristics}.
+     */
+    private CameraCapabilityCache.Entry collectCameraInfo()
     {
         StreamConfigurationMap map = mCameraCharacteristics.get(
                 CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
@@ -639,45 +781,38 @@ class Camera2
         {
             throw new IllegalStateException("Failed to get configuration map: " + mCameraId);
         }
-        mPreviewSizes.clear();
+        List<Size> previewSizes = new ArrayList<>();
         for (android.util.Size size : map.getOutputSizes(mPreview.getOutputClass()))
         {
-            mPreviewSizes.add(new Size(size.getWidth(), size.getHeight()));
+            previewSizes.add(new Size(size.getWidth(), size.getHeight()));
         }
-        mPictureSizes.clear();
+        List<Size> pictureSizes = new ArrayList<>();
         // try to get hi-res output sizes for Marshmallow and higher
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
         {
             android.util.Size[] outputSizes = map.getHighResolutionOutputSizes(ImageFormat.JPEG);
             if (outputSizes != null)
             {
-                for (android.util.Size size : map.getHighResolutionOutputSizes(ImageFormat.JPEG))
+                for (android.util.Size size : outputSizes)
                 {
-                    mPictureSizes.add(new Size(size.getWidth(), size.getHeight()));
+                    pictureSizes.add(new Size(size.getWidth(), size.getHeight()));
                 }
             }
         }
         // fallback camera sizes and lower than Marshmallow
-        if (mPictureSizes.ratios()
-                         .size() == 0)
+        if (pictureSizes.isEmpty())
         {
             for (android.util.Size size : map.getOutputSizes(ImageFormat.JPEG))
             {
-                mPictureSizes.add(new Size(size.getWidth(), size.getHeight()));
+                pictureSizes.add(new Size(size.getWidth(), size.getHeight()));
             }
         }
 
-        if (!mPreviewSizes.ratios()
-                          .contains(mAspectRatio))
-        {
-            mAspectRatio = mPreviewSizes.ratios()
-                                        .iterator()
-                                        .next();
-        }
-
         Integer sensorOrientation = mCameraCharacteristics.get(
                 CameraCharacteristics.SENSOR_ORIENTATION);
-        mCameraSensorOrientation = sensorOrientation == null ? 0 : sensorOrientation;
+        return new CameraCapabilityCache.Entry(mCameraId, mFacing,
+                                               sensorOrientation == null ? 0 : sensorOrientation,
+                                               previewSizes, pictureSizes);
     }
 
 
@@ -703,7 +838,8 @@ class Camera2
             mImageReaderSingle = ImageReader.newInstance(largestPicture.getWidth(),
                                                          largestPicture.getHeight(),
                                                          ImageFormat.JPEG, /* maxImages */ 2);
-            mImageReaderSingle.setOnImageAvailableListener(mOnImageAvailableListener, null);
+            mImageReaderSingle.setOnImageAvailableListener(mOnImageAvailableListener,
+                                                           mFrameHandler);
             break;
         case Constants.CONTINUOUS:
             SortedSet<Size> previewSizes = mPreviewSizes.sizes(
@@ -741,81 +877,209 @@ class Camera2
                         @Override
                         public void onImageAvailable(ImageReader imageReader)
                         {
-                            if (mOpenImages < imageReader.getMaxImages())
-                            {
-                                Image image = imageReader.acquireNextImage();
-                                if (image != null)
-                                {
-                                    //converting to JPEG
-                                    byte[] jpegData = ImageUtil.imageToByteArray(image);
-                                    mCallback.onPreviewFrame(new LeadSize(mPreview.getView()
-                                                                                  .getMeasuredWidth(),
-                                                                          mPreview.getView()
-                                                                                  .getMeasuredHeight(),
-                                                                          jpegData,
-                                                                          image.getWidth(),
-                                                                          image.getHeight()));
-                                    //write to file (for example ..some_path/frame.jpg)
-//                        FileManager.writeFrame(FILE_NAME, jpegData);
-                                    image.close();
-                                    mOpenImages--;
-                                }
-
-//                     Image image = imageReader.acquireNextImage();
-//                     Bitmap b = imageToBitmap(image,180);
-//                     if (image != null) {
-//                        mOpenImages++;
-//                        final int width = image.getWidth();
-//                        final int height = image.getHeight();
-//                        Image.Plane[] planes = image.getPlanes();
-//                        if (planes.length == 3) {
-//                           ByteBuffer ybb = planes[0].getBuffer();
-//                           ByteBuffer cbbb = planes[1].getBuffer();
-//                           ByteBuffer crbb = planes[2].getBuffer();
-//                           YUVImage.Builder builder = new YUVImage.Builder();
-//                           builder.setWidth(width)
-//                                 .setHeight(height)
-//                                 .setFormat(RasterYUVFormat.YUV_420_888)
-//                                 .setPlaneBytesPerLine(0, planes[0].getRowStride())
-//                                 .setPlanePixelStride(0, planes[0].getPixelStride())
-//                                 .setPlaneBytesPerLine(1, planes[1].getRowStride())
-//                                 .setPlanePixelStride(1, planes[1].getPixelStride())
-//                                 .setPlaneBytesPerLine(2, planes[2].getRowStride())
-//                                 .setPlanePixelStride(2, planes[2].getPixelStride());
-//                           if ((ybb.isDirect() && cbbb.isDirect() && crbb.isDirect())) {
-//                              builder.setDirect(true, mYUVCallback, image)
-//                                    .setPlaneByteBuffer(0, ybb)
-//                                    .setPlaneByteBuffer(1, cbbb)
-//                                    .setPlaneByteBuffer(2, crbb);
-//                           } else {
-//                              byte[] y = new byte[ybb.remaining()];
-//                              byte[] cb = new byte[cbbb.remaining()];
-//                              byte[] cr = new byte[crbb.remaining()];
-//                              ybb.get(y);
-//                              cbbb.get(cb);
-//                              crbb.get(cr);
-//                              ybb = null;
-//                              cbbb = null;
-//                              crbb = null;
-//                              builder.setDirect(false, null, null)
-//                                    .setPlaneData(0, y)
-//                                    .setPlaneData(1, cb)
-//                                    .setPlaneData(2, cr);
-//                           }
-//                           YUVImage yuvImage = builder.build();
-//                           if (!yuvImage.isDirect()) {
-//                              image.close();
-//                              mOpenImages--;
-//                           }
-//                        }
-//                     }
-                            }
+                            deliverFrames(imageReader);
                         }
-                    }, null);
+                    }, mFrameHandler);
             break;
         }
     }
 
+    private void startFrameThread()
+    {
+        if (mFrameThread != null)
+            return;
+        mFrameThread = new HandlerThread("CameraFrames", mFrameThreadPriority);
+        mFrameThread.start();
+        mFrameHandler = new Handler(mFrameThread.getLooper());
+    }
+
+    /**
+     * Stops the frame thread once the frame being delivered, if any, has been processed. The image
+     * readers must be closed first so that no further frames are queued.
+     */
+    private void stopFrameThread()
+    {
+        if (mFrameThread == null)
+            return;
+        mFrameThread.quitSafely();
+        mFrameThread = null;
+        mFrameHandler = null;
+    }
+
+    /**
+     * Delivers the queued continuous preview images, as allowed by {@link #mBackpressurePolicy}.
+     */
+    private void deliverFrames(ImageReader imageReader)
+    {
+        Image image;
+        while ((image = acquirePreviewImage(imageReader)) != null)
+        {
+            if (mPreviewFormat == Constants.PREVIEW_FORMAT_YUV_420_888)
+                deliverFrame(image);
+            else
+                deliverNV21(image);
+        }
+    }
+
+    /**
+     * Takes the next preview image to deliver from the reader.
+     * <p>
+     * At most {@code maxImages - 1} images are handed out at a time, so that one image of the
+     * reader always remains to discard queued frames with. Once consumers hold that many,
+     * {@link Constants#BACKPRESSURE_DROP_OLDEST} discards the queued frames and
+     * {@link Constants#BACKPRESSURE_BLOCK} leaves them queued until a frame is released.
+     *
+     * @return The image to deliver, or {@code null} if there is none or delivery has to wait.
+     */
+    private Image acquirePreviewImage(ImageReader imageReader)
+    {
+        boolean saturated = mFrameStats.getInFlightCount() >= imageReader.getMaxImages() - 1;
+        if (mBackpressurePolicy == Constants.BACKPRESSURE_BLOCK)
+        {
+            if (saturated)
+            {
+                mDeliveryDeferred.set(true);
+                return null;
+            }
+            return acquireNextImage(imageReader);
+        }
+
+        Image latest = null;
+        Image next;
+        while ((next = acquireNextImage(imageReader)) != null)
+        {
+            if (latest != null)
+            {
+                latest.close();
+                mFrameStats.onDropped();
+            }
+            latest = next;
+            if (saturated)
+            {
+                // No room to hold one image while taking the next
+                latest.close();
+                mFrameStats.onDropped();
+                latest = null;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return The next queued image, counted as acquired, or {@code null} if there is none or every
+     * image of the reader is open.
+     */
+    private Image acquireNextImage(ImageReader imageReader)
+    {
+        Image image;
+        try
+        {
+            image = imageReader.acquireNextImage();
+        }
+        catch (IllegalStateException e)
+        {
+            // Every image of the reader is open, or the reader has been closed
+            return null;
+        }
+        if (image != null)
+            mFrameStats.onAcquired();
+        return image;
+    }
+
+    /**
+     * Called once a delivered image is closed. Restarts delivery if it was paused by
+     * {@link Constants#BACKPRESSURE_BLOCK}.
+     */
+    private void onPreviewImageReleased()
+    {
+        mFrameStats.onReleased();
+        if (!mDeliveryDeferred.getAndSet(false))
+            return;
+        final Handler handler = mFrameHandler;
+        if (handler == null)
+            return;
+        handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ImageReader reader = mImageReaderContinuous;
+                if (reader != null)
+                    deliverFrames(reader);
+            }
+        });
+    }
+
+    /**
+     * Copies a preview image into a pooled NV21 buffer and sends it to
+     * {@link Callback#onPreviewFrame(LeadSize)}.
+     */
+    private void deliverNV21(Image image)
+    {
+        byte[] nv21 = mBufferPool.acquire(ImageUtil.getNV21Size(image));
+        if (nv21 == null)
+        {
+            image.close();
+            mFrameStats.onDropped();
+            return;
+        }
+        try
+        {
+            ImageUtil.YUV_420_888toNV21(image, nv21);
+            mCallback.onPreviewFrame(new LeadSize(mPreview.getView()
+                                                          .getMeasuredWidth(),
+                                                  mPreview.getView()
+                                                          .getMeasuredHeight(),
+                                                  nv21, image.getWidth(), image.getHeight()));
+        }
+        finally
+        {
+            mBufferPool.release(nv21);
+            image.close();
+            onPreviewImageReleased();
+        }
+    }
+
+    /**
+     * Hands a preview image to {@link Callback#onFrameAvailable(LeadFrame)} without copying it.
+     * The image stays open until every reference to the delivered {@link LeadFrame} has been
+     * released.
+     */
+    private void deliverFrame(final Image image)
+    {
+        Image.Plane[] imagePlanes = image.getPlanes();
+        LeadFrame.Plane[] planes = new LeadFrame.Plane[imagePlanes.length];
+        for (int i = 0; i < imagePlanes.length; i++)
+        {
+            planes[i] = new LeadFrame.Plane(imagePlanes[i].getBuffer(),
+                                            imagePlanes[i].getRowStride(),
+                                            imagePlanes[i].getPixelStride());
+        }
+        LeadFrame frame = new LeadFrame(mPreview.getView()
+                                                .getMeasuredWidth(),
+                                        mPreview.getView()
+                                                .getMeasuredHeight(),
+                                        image.getWidth(), image.getHeight(),
+                                        image.getTimestamp(), planes,
+                                        new LeadFrame.Releaser()
+                                        {
+                                            @Override
+                                            public void onFrameReleased(LeadFrame frame)
+                                            {
+                                                image.close();
+                                                onPreviewImageReleased();
+                                            }
+                                        });
+        try
+        {
+            mCallback.onFrameAvailable(frame);
+        }
+        finally
+        {
+            frame.release();
+        }
+    }
+
     /**
      * <p>Starts opening a camera device.</p>
      * <p>The result will be processed in {@link #mCameraDeviceCallback}.</p>
@@ -909,6 +1173,48 @@ class Camera2
         return candidates.last();
     }
 
+    /**
+     * Updates the AE target frame rate range to {@link #mTargetFrameRate}: the supported range
+     * with the lowest upper bound that still reaches the target, and of those the one with the
+     * highest lower bound, so that exposure times stay short. Without a target the camera default
+     * applies.
+     */
+    private void updateFrameRate()
+    {
+        if (mTargetFrameRate <= 0)
+        {
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, null);
+            return;
+        }
+        Range<Integer>[] ranges = getCameraCharacteristics().get(
+                CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges == null || ranges.length == 0)
+            return;
+        Range<Integer> best = null;
+        for (Range<Integer> range : ranges)
+        {
+            if (best == null || isBetterFrameRateRange(range, best))
+                best = range;
+        }
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, best);
+    }
+
+    private boolean isBetterFrameRateRange(Range<Integer> range, Range<Integer> best)
+    {
+        boolean reaches = range.getUpper() >= mTargetFrameRate;
+        boolean bestReaches = best.getUpper() >= mTargetFrameRate;
+        if (reaches != bestReaches)
+            return reaches;
+        if (!range.getUpper()
+                  .equals(best.getUpper()))
+        {
+            // Closest to the target from above, or the fastest if none reaches it
+            return reaches ? range.getUpper() < best.getUpper() :
+                    range.getUpper() > best.getUpper();
+        }
+        return range.getLower() > best.getLower();
+    }
+
     /**
      * Updates the internal state of auto-focus to {@link #mAutoFocus}.
      */
@@ -916,7 +1222,7 @@ class Camera2
     {
         if (mAutoFocus)
         {
-            int[] modes = mCameraCharacteristics.get(
+            int[] modes = getCameraCharacteristics().get(
                     CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
             // Auto focus is not supported
             if (modes == null || modes.length == 0 ||
@@ -1044,7 +1350,7 @@ class Camera2
             }
             // Calculate JPEG orientation.
             @SuppressWarnings("ConstantConditions")
-            int sensorOrientation = mCameraCharacteristics.get(
+            int sensorOrientation = getCameraCharacteristics().get(
                     CameraCharacteristics.SENSOR_ORIENTATION);
             captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION,
                                       (sensorOrientation +
@@ -1086,6 +1392,19 @@ class Camera2
         }
     }
 
+    @Override
+    void setPreviewFormat(int previewFormat)
+    {
+        // The continuous reader always produces YUV_420_888; only the delivery path changes
+        mPreviewFormat = previewFormat;
+    }
+
+    @Override
+    int getPreviewFormat()
+    {
+        return mPreviewFormat;
+    }
+
     /**
      * Unlocks the auto-focus and restart camera preview. This is supposed to be called after
      * capturing a still picture.
@@ -1220,22 +1539,7 @@ class Camera2
     public Bitmap imageToBitmap(Image image, float rotationDegrees)
     {
 
-        byte[] nv21;
-        ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-        ByteBuffer uBuffer = image.getPlanes()[1].getBuffer();
-        ByteBuffer vBuffer = image.getPlanes()[2].getBuffer();
-
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
-
-        nv21 = new byte[ySize + uSize + vSize];
-
-
-        //U and V are swapped
-        yBuffer.get(nv21, 0, ySize);
-        vBuffer.get(nv21, ySize, vSize);
-        uBuffer.get(nv21, ySize + vSize, uSize);
+        byte[] nv21 = ImageUtil.imageToByteArray(image);
 
 //      return nv21;
 
@@ -1302,31 +1606,28 @@ class Camera2
             }
             else if (image.getFormat() == ImageFormat.YUV_420_888)
             {
-                data = YUV_420_888toNV21(image);
+                data = new byte[getNV21Size(image)];
+                YUV_420_888toNV21(image, data);
             }
             return data;
         }
 
-        @RequiresApi(api = Build.VERSION_CODES.KITKAT)
-        private static byte[] YUV_420_888toNV21(Image image)
+        static int getNV21Size(Image image)
         {
-            byte[] nv21;
-            ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-            ByteBuffer uBuffer = image.getPlanes()[1].getBuffer();
-            ByteBuffer vBuffer = image.getPlanes()[2].getBuffer();
-
-            int ySize = yBuffer.remaining();
-            int uSize = uBuffer.remaining();
-            int vSize = vBuffer.remaining();
-
-            nv21 = new byte[ySize + uSize + vSize];
-
-            //U and V are swapped
-            yBuffer.get(nv21, 0, ySize);
-            vBuffer.get(nv21, ySize, vSize);
-            uBuffer.get(nv21, ySize + vSize, uSize);
+            return YuvConverter.nv21Size(image.getWidth(), image.getHeight());
+        }
 
-            return nv21;
+        @RequiresApi(api = Build.VERSION_CODES.KITKAT)
+        static void YUV_420_888toNV21(Image image, byte[] nv21)
+        {
+            Image.Plane[] planes = image.getPlanes();
+            YuvConverter.toNV21(planes[0].getBuffer(), planes[0].getRowStride(),
+                                planes[0].getPixelStride(),
+                                planes[1].getBuffer(), planes[1].getRowStride(),
+                                planes[1].getPixelStride(),
+                                planes[2].getBuffer(), planes[2].getRowStride(),
+                                planes[2].getPixelStride(),
+                                image.getWidth(), image.getHeight(), nv21);
         }
 
         private static byte[] NV21toJPEG(byte[] nv21, int width, int height)
@@ -0,0 +1,200 @@
+package leadtools.camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Remembers, across sessions, what a camera reported when it was first discovered: which camera
+ * serves a facing, its sensor orientation and its supported preview and picture sizes.
+ * <p>
+ * Querying the camera service for every camera's characteristics and rebuilding the size lists
+ * is repeated each time the camera starts; with an entry from this cache the streams can be
+ * configured right away. Entries are kept in {@link SharedPreferences} and are all discarded when
+ * the OS build fingerprint changes, since an update may change what the camera HAL reports. Each
+ * camera implementation uses its own namespace.
+ */
+class CameraCapabilityCache {
+
+   private static final String PREFERENCES_NAME = "leadtools.camera.capabilities";
+
+   private static final String KEY_FINGERPRINT = "fingerprint";
+
+   /**
+    * Bumped whenever the encoding of an entry changes
+    */
+   private static final int FORMAT_VERSION = 1;
+
+   /**
+    * What was discovered about one camera.
+    */
+   static final class Entry {
+
+      final String cameraId;
+      final int facing;
+      final int sensorOrientation;
+      final List<Size> previewSizes;
+      final List<Size> pictureSizes;
+
+      Entry(String cameraId, int facing, int sensorOrientation, List<Size> previewSizes,
+            List<Size> pictureSizes) {
+         this.cameraId = cameraId;
+         this.facing = facing;
+         this.sensorOrientation = sensorOrientation;
+         this.previewSizes = previewSizes;
+         this.pictureSizes = pictureSizes;
+      }
+
+      /**
+       * Replaces the content of {@code previewSizes} and {@code pictureSizes} with this entry's.
+       */
+      void fill(SizeMap previewSizes, SizeMap pictureSizes) {
+         previewSizes.clear();
+         for (Size size : this.previewSizes) {
+            previewSizes.add(size);
+         }
+         pictureSizes.clear();
+         for (Size size : this.pictureSizes) {
+            pictureSizes.add(size);
+         }
+      }
+   }
+
+   private final SharedPreferences mPreferences;
+   private final String mNamespace;
+
+   /**
+    * @param namespace Distinguishes the entries of different camera implementations, or of one
+    *                  implementation whose sizes depend on its preview output.
+    */
+   CameraCapabilityCache(Context context, String namespace) {
+      mPreferences = context.getApplicationContext()
+            .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+      mNamespace = namespace;
+      String fingerprint = mPreferences.getString(KEY_FINGERPRINT, null);
+      if (!Build.FINGERPRINT.equals(fingerprint)) {
+         mPreferences.edit()
+               .clear()
+               .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+               .apply();
+      }
+   }
+
+   /**
+    * @return The entry of the camera last chosen for {@code facing}, or {@code null} if none is
+    * known. The entry's own facing differs when no camera had the requested one.
+    */
+   Entry getByFacing(int facing) {
+      String cameraId = mPreferences.getString(facingKey(facing), null);
+      if (cameraId == null) {
+         return null;
+      }
+      return decode(cameraId, mPreferences.getString(cameraKey(cameraId), null));
+   }
+
+   /**
+    * Records {@code entry} as the camera chosen for {@code requestedFacing}.
+    */
+   void put(int requestedFacing, Entry entry) {
+      mPreferences.edit()
+            .putString(facingKey(requestedFacing), entry.cameraId)
+            .putString(cameraKey(entry.cameraId), encode(entry))
+            .apply();
+   }
+
+   /**
+    * Forgets every entry of this namespace, e.g. after the camera failed to open from one.
+    */
+   void clear() {
+      SharedPreferences.Editor editor = mPreferences.edit();
+      String prefix = mNamespace + ".";
+      for (String key : mPreferences.getAll().keySet()) {
+         if (key.startsWith(prefix)) {
+            editor.remove(key);
+         }
+      }
+      editor.apply();
+   }
+
+   private String facingKey(int facing) {
+      return mNamespace + ".facing." + facing;
+   }
+
+   private String cameraKey(String cameraId) {
+      return mNamespace + ".camera." + cameraId;
+   }
+
+   /**
+    * Encodes an entry, without its camera id, as
+    * {@code version|facing|orientation|WxH,WxH,...|WxH,WxH,...}.
+    */
+   static String encode(Entry entry) {
+      StringBuilder builder = new StringBuilder();
+      builder.append(FORMAT_VERSION)
+            .append('|')
+            .append(entry.facing)
+            .append('|')
+            .append(entry.sensorOrientation)
+            .append('|');
+      appendSizes(builder, entry.previewSizes);
+      builder.append('|');
+      appendSizes(builder, entry.pictureSizes);
+      return builder.toString();
+   }
+
+   /**
+    * @return The decoded entry, or {@code null} if {@code encoded} is missing, of another format
+    * version or malformed.
+    */
+   static Entry decode(String cameraId, String encoded) {
+      if (encoded == null) {
+         return null;
+      }
+      String[] fields = encoded.split("\\|", -1);
+      if (fields.length != 5) {
+         return null;
+      }
+      try {
+         if (Integer.parseInt(fields[0]) != FORMAT_VERSION) {
+            return null;
+         }
+         List<Size> previewSizes = parseSizes(fields[3]);
+         List<Size> pictureSizes = parseSizes(fields[4]);
+         if (previewSizes.isEmpty() || pictureSizes.isEmpty()) {
+            return null;
+         }
+         return new Entry(cameraId, Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                          previewSizes, pictureSizes);
+      } catch (NumberFormatException e) {
+         return null;
+      }
+   }
+
+   private static void appendSizes(StringBuilder builder, List<Size> sizes) {
+      for (int i = 0; i < sizes.size(); i++) {
+         if (i > 0) {
+            builder.append(',');
+         }
+         builder.append(sizes.get(i));
+      }
+   }
+
+   private static List<Size> parseSizes(String field) {
+      List<Size> sizes = new ArrayList<>();
+      if (field.isEmpty()) {
+         return sizes;
+      }
+      for (String item : field.split(",")) {
+         int separator = item.indexOf('x');
+         if (separator < 0) {
+            throw new NumberFormatException("Not a size: " + item);
+         }
+         sizes.add(new Size(Integer.parseInt(item.substring(0, separator)),
+                            Integer.parseInt(item.substring(separator + 1))));
+      }
+      return sizes;
+   }
+}
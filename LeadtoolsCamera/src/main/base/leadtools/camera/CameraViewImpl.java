@@ -38,6 +38,15 @@ abstract class CameraViewImpl {
 
    protected int mDisplayOrientation;
 
+   protected final FrameBufferPool mBufferPool
+         = new FrameBufferPool(Constants.DEFAULT_MAX_PREVIEW_IMAGES);
+
+   protected int mFrameThreadPriority = Constants.DEFAULT_FRAME_THREAD_PRIORITY;
+
+   protected final FrameStats mFrameStats = new FrameStats();
+
+   protected int mBackpressurePolicy = Constants.BACKPRESSURE_DROP_OLDEST;
+
    CameraViewImpl(Callback callback, PreviewImpl preview) {
       mCallback = callback;
       mPreview = preview;
@@ -47,6 +56,34 @@ abstract class CameraViewImpl {
       return mPreview.getView();
    }
 
+   FrameBufferPool getFrameBufferPool() {
+      return mBufferPool;
+   }
+
+   /**
+    * Sets the {@link android.os.Process} priority of the thread that delivers preview frames.
+    * Back-ends that deliver frames on their own thread apply it the next time they start.
+    */
+   void setFrameThreadPriority(int priority) {
+      mFrameThreadPriority = priority;
+   }
+
+   int getFrameThreadPriority() {
+      return mFrameThreadPriority;
+   }
+
+   FrameStats getFrameStats() {
+      return mFrameStats;
+   }
+
+   void setBackpressurePolicy(int policy) {
+      mBackpressurePolicy = policy;
+   }
+
+   int getBackpressurePolicy() {
+      return mBackpressurePolicy;
+   }
+
    int getPreviewBufferRotation() {
       return mCameraSensorOrientation - mDisplayOrientation;
    }
@@ -112,6 +149,10 @@ abstract class CameraViewImpl {
 
    abstract float getMaxPreviewSizeMP();
 
+   abstract void setTargetFrameRate(int frameRate);
+
+   abstract int getTargetFrameRate();
+
    abstract void setMaxPreviewImages(int maxPreviewImages);
 
    abstract int getMaxPreviewImages();
@@ -120,6 +161,10 @@ abstract class CameraViewImpl {
 
    abstract int getCaptureMode();
 
+   abstract void setPreviewFormat(int previewFormat);
+
+   abstract int getPreviewFormat();
+
    abstract void takePicture();
 
    abstract void setDisplayOrientation(int displayOrientation);
@@ -139,6 +184,8 @@ abstract class CameraViewImpl {
 
       void onPreviewFrame(LeadSize surfaceSize);
 
+      void onFrameAvailable(LeadFrame frame);
+
    }
 
 }
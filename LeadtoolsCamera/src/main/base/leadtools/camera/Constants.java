@@ -30,6 +30,12 @@ interface Constants {
 
    int DEFAULT_MAX_PREVIEW_IMAGES = 4;
 
+   /** {@code android.os.Process.THREAD_PRIORITY_DEFAULT} */
+   int DEFAULT_FRAME_THREAD_PRIORITY = 0;
+
+   /** The frame rate is left to the camera */
+   int DEFAULT_TARGET_FRAME_RATE = 0;
+
    int FACING_BACK = 0;
    int FACING_FRONT = 1;
 
@@ -41,4 +47,10 @@ interface Constants {
 
    int CONTINUOUS = 0;
    int SINGLE = 1;
+
+   int PREVIEW_FORMAT_NV21 = 0;
+   int PREVIEW_FORMAT_YUV_420_888 = 1;
+
+   int BACKPRESSURE_DROP_OLDEST = 0;
+   int BACKPRESSURE_BLOCK = 1;
 }
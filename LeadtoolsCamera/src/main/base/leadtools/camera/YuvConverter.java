@@ -0,0 +1,208 @@
+package leadtools.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stride-aware conversions of YUV_420_888 planes into caller-provided arrays.
+ * <p>
+ * Planes are described by their buffer, row stride and pixel stride, exactly as reported by
+ * {@code android.media.Image.Plane} or {@link LeadFrame.Plane}. Offsets are absolute from index 0
+ * of each buffer and the buffers' positions are never modified. This class does not depend on
+ * Android and can be exercised on a plain JVM.
+ */
+public final class YuvConverter {
+
+   private YuvConverter() {
+   }
+
+   /**
+    * @return The number of bytes of an NV21 image of the given size.
+    */
+   public static int nv21Size(int width, int height) {
+      return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+   }
+
+   /**
+    * Copies the luma of a whole frame into {@code out}, tightly packed ({@code width} bytes per
+    * row).
+    */
+   public static void extractLuma(ByteBuffer y, int rowStride, int pixelStride,
+                                  int width, int height, byte[] out) {
+      extractLuma(y, rowStride, pixelStride, 0, 0, width, height, out);
+   }
+
+   /**
+    * Copies the luma of a region of interest into {@code out}, tightly packed
+    * ({@code cropWidth} bytes per row). Only the bytes of the region are read.
+    *
+    * @throws IllegalArgumentException when {@code out} is smaller than the region, or the region
+    *                                  is not within {@code y}.
+    */
+   public static void extractLuma(ByteBuffer y, int rowStride, int pixelStride,
+                                  int left, int top, int cropWidth, int cropHeight, byte[] out) {
+      if (out.length < cropWidth * cropHeight) {
+         throw new IllegalArgumentException("Output too small for " + cropWidth + "x" + cropHeight);
+      }
+      checkPlaneRegion(y, rowStride, pixelStride, left, top, cropWidth, cropHeight);
+      if (pixelStride == 1) {
+         ByteBuffer src = y.duplicate();
+         for (int row = 0; row < cropHeight; row++) {
+            src.position((top + row) * rowStride + left);
+            src.get(out, row * cropWidth, cropWidth);
+         }
+      } else {
+         int dst = 0;
+         for (int row = 0; row < cropHeight; row++) {
+            int src = (top + row) * rowStride + left * pixelStride;
+            for (int col = 0; col < cropWidth; col++) {
+               out[dst++] = y.get(src);
+               src += pixelStride;
+            }
+         }
+      }
+   }
+
+   /**
+    * Copies the luma of a region of interest of {@code frame} into {@code out}.
+    *
+    * @throws IllegalArgumentException when the region is not within the frame.
+    * @see #extractLuma(ByteBuffer, int, int, int, int, int, int, byte[])
+    */
+   public static void extractLuma(LeadFrame frame, int left, int top, int cropWidth,
+                                  int cropHeight, byte[] out) {
+      checkFrameRegion(frame, left, top, cropWidth, cropHeight);
+      LeadFrame.Plane plane = frame.getPlane(LeadFrame.PLANE_Y);
+      extractLuma(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                  left, top, cropWidth, cropHeight, out);
+   }
+
+   /**
+    * Copies every {@code step}-th luma sample of every {@code step}-th row of a region of interest
+    * into {@code out}, tightly packed ({@code cropWidth / step} bytes per row), e.g. for a cheap
+    * preview of the region. Only the sampled bytes are read.
+    *
+    * @throws IllegalArgumentException when {@code step} is not positive, {@code out} is smaller
+    *                                  than the subsampled region or the region is not within
+    *                                  {@code y}.
+    */
+   public static void extractLumaSubsampled(ByteBuffer y, int rowStride, int pixelStride,
+                                            int left, int top, int cropWidth, int cropHeight,
+                                            int step, byte[] out) {
+      if (step < 1) {
+         throw new IllegalArgumentException("Invalid step " + step);
+      }
+      int outWidth = cropWidth / step;
+      int outHeight = cropHeight / step;
+      if (out.length < outWidth * outHeight) {
+         throw new IllegalArgumentException("Output too small for " + outWidth + "x" + outHeight);
+      }
+      checkPlaneRegion(y, rowStride, pixelStride, left, top, cropWidth, cropHeight);
+      int dst = 0;
+      int sampleStride = pixelStride * step;
+      for (int row = 0; row < outHeight; row++) {
+         int src = (top + row * step) * rowStride + left * pixelStride;
+         for (int col = 0; col < outWidth; col++) {
+            out[dst++] = y.get(src);
+            src += sampleStride;
+         }
+      }
+   }
+
+   /**
+    * Copies a subsampled region of interest of {@code frame} into {@code out}.
+    *
+    * @throws IllegalArgumentException when the region is not within the frame.
+    * @see #extractLumaSubsampled(ByteBuffer, int, int, int, int, int, int, int, byte[])
+    */
+   public static void extractLumaSubsampled(LeadFrame frame, int left, int top, int cropWidth,
+                                            int cropHeight, int step, byte[] out) {
+      checkFrameRegion(frame, left, top, cropWidth, cropHeight);
+      LeadFrame.Plane plane = frame.getPlane(LeadFrame.PLANE_Y);
+      extractLumaSubsampled(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                            left, top, cropWidth, cropHeight, step, out);
+   }
+
+   /**
+    * Rejects a region that is not within a {@code frame}, e.g. one computed for a frame of
+    * another size. NV21 luma buffers also hold the chroma, so the plane check alone would let
+    * rows below the frame through. The extraction methods check their region with it; callers
+    * can check it first to avoid allocating for a region that would be rejected.
+    *
+    * @throws IllegalArgumentException when the region is not within the frame.
+    */
+   public static void checkFrameRegion(LeadFrame frame, int left, int top, int cropWidth,
+                                       int cropHeight) {
+      if (left < 0 || top < 0 || cropWidth < 0 || cropHeight < 0 ||
+            left + cropWidth > frame.getWidth() || top + cropHeight > frame.getHeight()) {
+         throw new IllegalArgumentException("Region " + cropWidth + "x" + cropHeight + " at " +
+                                            left + "," + top + " outside the " +
+                                            frame.getWidth() + "x" + frame.getHeight() + " frame");
+      }
+   }
+
+   /**
+    * Rejects a region whose bytes are not all within the limit of {@code y}.
+    */
+   private static void checkPlaneRegion(ByteBuffer y, int rowStride, int pixelStride, int left,
+                                        int top, int cropWidth, int cropHeight) {
+      if (left < 0 || top < 0 || cropWidth < 0 || cropHeight < 0) {
+         throw new IllegalArgumentException("Invalid region " + cropWidth + "x" + cropHeight +
+                                            " at " + left + "," + top);
+      }
+      if (cropWidth == 0 || cropHeight == 0) {
+         return;
+      }
+      long last = (long)(top + cropHeight - 1) * rowStride +
+            (long)(left + cropWidth - 1) * pixelStride;
+      if (last >= y.limit()) {
+         throw new IllegalArgumentException("Region " + cropWidth + "x" + cropHeight + " at " +
+                                            left + "," + top + " outside the plane");
+      }
+   }
+
+   /**
+    * Interleaves Y, U and V planes into an NV21 image (full resolution Y followed by
+    * interleaved V/U samples) of {@link #nv21Size(int, int)} bytes.
+    *
+    * @throws IllegalArgumentException when {@code out} is too small.
+    */
+   public static void toNV21(ByteBuffer y, int yRowStride, int yPixelStride,
+                             ByteBuffer u, int uRowStride, int uPixelStride,
+                             ByteBuffer v, int vRowStride, int vPixelStride,
+                             int width, int height, byte[] out) {
+      if (out.length < nv21Size(width, height)) {
+         throw new IllegalArgumentException("Output too small for " + width + "x" + height);
+      }
+      extractLuma(y, yRowStride, yPixelStride, 0, 0, width, height, out);
+
+      int chromaWidth = (width + 1) / 2;
+      int chromaHeight = (height + 1) / 2;
+      int dst = width * height;
+      for (int row = 0; row < chromaHeight; row++) {
+         int uSrc = row * uRowStride;
+         int vSrc = row * vRowStride;
+         for (int col = 0; col < chromaWidth; col++) {
+            out[dst++] = v.get(vSrc);
+            out[dst++] = u.get(uSrc);
+            uSrc += uPixelStride;
+            vSrc += vPixelStride;
+         }
+      }
+   }
+
+   /**
+    * Interleaves the planes of {@code frame} into an NV21 image.
+    *
+    * @see #toNV21(ByteBuffer, int, int, ByteBuffer, int, int, ByteBuffer, int, int, int, int, byte[])
+    */
+   public static void toNV21(LeadFrame frame, byte[] out) {
+      LeadFrame.Plane y = frame.getPlane(LeadFrame.PLANE_Y);
+      LeadFrame.Plane u = frame.getPlane(LeadFrame.PLANE_U);
+      LeadFrame.Plane v = frame.getPlane(LeadFrame.PLANE_V);
+      toNV21(y.getBuffer(), y.getRowStride(), y.getPixelStride(),
+             u.getBuffer(), u.getRowStride(), u.getPixelStride(),
+             v.getBuffer(), v.getRowStride(), v.getPixelStride(),
+             frame.getWidth(), frame.getHeight(), out);
+   }
+
+}
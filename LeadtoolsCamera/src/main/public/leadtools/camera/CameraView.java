@@ -32,13 +32,14 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.os.ParcelableCompat;
 import android.support.v4.os.ParcelableCompatCreatorCallbacks;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.widget.FrameLayout;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class CameraView
         extends FrameLayout
@@ -94,6 +95,30 @@ public class CameraView
 
     public static final int SINGLE = Constants.SINGLE;
 
+    /**
+     * Preview frames are converted to NV21 and sent to
+     * {@link Callback#onPreviewFrame(CameraView, LeadSize)}.
+     */
+    public static final int PREVIEW_FORMAT_NV21 = Constants.PREVIEW_FORMAT_NV21;
+
+    /**
+     * Preview frames are sent without conversion to
+     * {@link Callback#onFrameAvailable(CameraView, LeadFrame)}.
+     */
+    public static final int PREVIEW_FORMAT_YUV_420_888 = Constants.PREVIEW_FORMAT_YUV_420_888;
+
+    /**
+     * When every preview image is held by a consumer, frames queued by the camera are discarded
+     * so that the next delivered frame is the most recent one.
+     */
+    public static final int BACKPRESSURE_DROP_OLDEST = Constants.BACKPRESSURE_DROP_OLDEST;
+
+    /**
+     * When every preview image is held by a consumer, delivery pauses until a frame is released
+     * and queued frames are then delivered in order. The camera stalls while the queue is full.
+     */
+    public static final int BACKPRESSURE_BLOCK = Constants.BACKPRESSURE_BLOCK;
+
 
     /**
      * The mode for for the camera device's flash control
@@ -104,6 +129,23 @@ public class CameraView
     }
 
 
+    /**
+     * The format in which continuous preview frames are delivered
+     */
+    @IntDef({ PREVIEW_FORMAT_NV21, PREVIEW_FORMAT_YUV_420_888 })
+    public @interface PreviewFormat
+    {
+    }
+
+    /**
+     * What happens to new frames when consumers fall behind
+     */
+    @IntDef({ BACKPRESSURE_DROP_OLDEST, BACKPRESSURE_BLOCK })
+    public @interface BackpressurePolicy
+    {
+    }
+
+
     private final CameraViewImpl mImpl;
 
     private final CallbackBridge mCallbacks;
@@ -114,6 +156,27 @@ public class CameraView
 
     private final DisplayOrientationDetector mDisplayOrientationDetector;
 
+    private PreviewGovernor mPreviewGovernor;
+
+    /**
+     * How often the governor closes a window while the camera is open
+     */
+    private static final long GOVERNOR_INTERVAL_MS = 500;
+
+    private final Runnable mGovernorTick = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            PreviewGovernor governor = mPreviewGovernor;
+            if (governor == null)
+                return;
+            if (isCameraOpened() && governor.update(System.nanoTime()))
+                applyPreviewLevel(governor.getLevel());
+            postDelayed(this, GOVERNOR_INTERVAL_MS);
+        }
+    };
+
     public CameraView(Context context)
     {
         this(context, null);
@@ -147,7 +210,7 @@ public class CameraView
         mCallbacks = new CallbackBridge();
         if (Build.VERSION.SDK_INT < 22 || forceLegacyCamera)
         {
-            mImpl = new Camera1(mCallbacks, preview);
+            mImpl = new Camera1(mCallbacks, preview, context);
         }
         else
         {
@@ -173,6 +236,8 @@ public class CameraView
         setMaxPreviewSizeMP(a.getFloat(R.styleable.CameraView_maxPreviewSizeMP,
                                        Constants.DEFAULT_MAX_PREVIEW_SIZE_MP));
         setCaptureMode(a.getInt(R.styleable.CameraView_captureMode, Constants.CONTINUOUS));
+        setPreviewFormat(a.getInt(R.styleable.CameraView_previewFormat,
+                                  Constants.PREVIEW_FORMAT_NV21));
         a.recycle();
         // Display orientation detector
         mDisplayOrientationDetector = new DisplayOrientationDetector(context)
@@ -194,11 +259,14 @@ public class CameraView
     {
         super.onAttachedToWindow();
         mDisplayOrientationDetector.enable(ViewCompat2.getDisplay(this));
+        if (mPreviewGovernor != null)
+            post(mGovernorTick);
     }
 
     @Override
     protected void onDetachedFromWindow()
     {
+        removeCallbacks(mGovernorTick);
         mDisplayOrientationDetector.disable();
         super.onDetachedFromWindow();
     }
@@ -511,8 +579,11 @@ public class CameraView
 
     /**
      * Sets the max preview images that can be allocated at any given time. This value cannot be lower
-     * than 2 for performance purposes. Only applies to devices using {@link android.hardware.camera2}
-     * (API >= 22). Typically, this value should increase if you are processing multiple images in parallel
+     * than 2 for performance purposes. On devices using {@link android.hardware.camera2} (API >= 22)
+     * it bounds the open images of the preview reader, of which consumers may retain one less
+     * (see {@link #setBackpressurePolicy(int)}); on the legacy camera it is the number of
+     * preview callback buffers. It also sizes the {@link FrameBufferPool} used for NV21 frames.
+     * Typically, this value should increase if you are processing multiple images in parallel
      * and should match the number of threads that you are using.
      *
      * @param maxPreviewImages The maximum number of preview images that can be allocated at any time
@@ -522,6 +593,65 @@ public class CameraView
         mImpl.setMaxPreviewImages(maxPreviewImages);
     }
 
+    /**
+     * Sets the preview frame rate the camera should aim for. The camera picks the supported range
+     * whose maximum is closest to the target from above; lower frame rates save power when
+     * consumers cannot keep up with the camera anyway. The change applies without restarting the
+     * preview.
+     *
+     * @param frameRate Frames per second, or 0 to leave the frame rate to the camera (the
+     *                  default).
+     */
+    public void setTargetFrameRate(int frameRate)
+    {
+        mImpl.setTargetFrameRate(frameRate);
+    }
+
+    /**
+     * Gets the preview frame rate the camera aims for.
+     *
+     * @return Frames per second, or 0 if the camera chooses.
+     */
+    public int getTargetFrameRate()
+    {
+        return mImpl.getTargetFrameRate();
+    }
+
+    /**
+     * Lets a {@link PreviewGovernor} adapt the frame rate, preview size and preview images to
+     * what the frame consumers process. The first level of the governor is applied immediately,
+     * then the governor is evaluated on the main thread while the camera is open. Changes of the
+     * preview size or images restart the camera.
+     *
+     * @param governor The governor, or {@code null} to stop adapting; the current settings are
+     *                 then kept.
+     */
+    public void setPreviewGovernor(@Nullable PreviewGovernor governor)
+    {
+        removeCallbacks(mGovernorTick);
+        mPreviewGovernor = governor;
+        if (governor == null)
+            return;
+        applyPreviewLevel(governor.getLevel());
+        if (ViewCompat.isAttachedToWindow(this))
+            postDelayed(mGovernorTick, GOVERNOR_INTERVAL_MS);
+    }
+
+    @Nullable
+    public PreviewGovernor getPreviewGovernor()
+    {
+        return mPreviewGovernor;
+    }
+
+    private void applyPreviewLevel(PreviewGovernor.Level level)
+    {
+        setTargetFrameRate(level.frameRate);
+        if (level.maxPreviewImages != getMaxPreviewImages())
+            setMaxPreviewImages(level.maxPreviewImages);
+        if (level.maxPreviewSizeMP != getMaxPreviewSizeMP())
+            setMaxPreviewSizeMP(level.maxPreviewSizeMP);
+    }
+
     public void setCaptureMode(int captureMode)
     {
         mImpl.setCaptureMode(captureMode);
@@ -532,6 +662,32 @@ public class CameraView
         return mImpl.getCaptureMode();
     }
 
+    /**
+     * Sets the format in which continuous preview frames are delivered. With
+     * {@link #PREVIEW_FORMAT_NV21} (the default) every frame is copied into an NV21 array and sent
+     * to {@link Callback#onPreviewFrame(CameraView, LeadSize)}. With
+     * {@link #PREVIEW_FORMAT_YUV_420_888} the camera planes are sent as-is to
+     * {@link Callback#onFrameAvailable(CameraView, LeadFrame)} and no copy is made.
+     *
+     * @param previewFormat The desired preview format.
+     */
+    public void setPreviewFormat(@PreviewFormat int previewFormat)
+    {
+        mImpl.setPreviewFormat(previewFormat);
+    }
+
+    /**
+     * Gets the format in which continuous preview frames are delivered.
+     *
+     * @return The current preview format.
+     */
+    @PreviewFormat
+    public int getPreviewFormat()
+    {
+        //noinspection WrongConstant
+        return mImpl.getPreviewFormat();
+    }
+
     /**
      * Gets the max number of preview images that can be allocated
      *
@@ -542,6 +698,75 @@ public class CameraView
         return mImpl.getMaxPreviewImages();
     }
 
+    /**
+     * Gets the pool that recycles NV21 preview buffers. Its allocation count stays constant while
+     * the camera streams, which can be used to verify that no per-frame allocation takes place.
+     *
+     * @return The preview buffer pool.
+     */
+    public FrameBufferPool getFrameBufferPool()
+    {
+        return mImpl.getFrameBufferPool();
+    }
+
+    /**
+     * Sets the priority of the thread that delivers preview frames and pictures on devices using
+     * {@link android.hardware.camera2}. The new priority applies the next time the camera starts.
+     * See {@link Callback} for which thread receives each callback.
+     *
+     * @param priority An {@link android.os.Process} thread priority, e.g.
+     *                 {@link android.os.Process#THREAD_PRIORITY_DISPLAY}.
+     */
+    public void setFrameThreadPriority(int priority)
+    {
+        mImpl.setFrameThreadPriority(priority);
+    }
+
+    /**
+     * Gets the priority of the thread that delivers preview frames.
+     *
+     * @return The {@link android.os.Process} thread priority.
+     */
+    public int getFrameThreadPriority()
+    {
+        return mImpl.getFrameThreadPriority();
+    }
+
+    /**
+     * Gets the counters of acquired, dropped, released and in-flight preview frames.
+     *
+     * @return The live frame statistics of this view.
+     */
+    public FrameStats getFrameStats()
+    {
+        return mImpl.getFrameStats();
+    }
+
+    /**
+     * Sets what happens to new frames once consumers hold every preview image allowed by
+     * {@link #setMaxPreviewImages(int)}. Only devices using {@link android.hardware.camera2} (API
+     * >= 22) honor {@link #BACKPRESSURE_DROP_OLDEST}; the legacy camera always blocks, discarding
+     * frames while none of its preview buffers is free.
+     *
+     * @param policy {@link #BACKPRESSURE_DROP_OLDEST} (the default) or {@link #BACKPRESSURE_BLOCK}.
+     */
+    public void setBackpressurePolicy(@BackpressurePolicy int policy)
+    {
+        mImpl.setBackpressurePolicy(policy);
+    }
+
+    /**
+     * Gets what happens to new frames when consumers fall behind.
+     *
+     * @return The current backpressure policy.
+     */
+    @BackpressurePolicy
+    public int getBackpressurePolicy()
+    {
+        //noinspection WrongConstant
+        return mImpl.getBackpressurePolicy();
+    }
+
     public boolean hasMultipleCameras()
     {
         return mImpl.hasMultipleCameras();
@@ -588,7 +813,8 @@ public class CameraView
             implements CameraViewImpl.Callback
     {
 
-        private final ArrayList<Callback> mCallbacks = new ArrayList<>();
+        // Frames are dispatched off the main thread while callbacks are added on it
+        private final CopyOnWriteArrayList<Callback> mCallbacks = new CopyOnWriteArrayList<>();
 
         private boolean mRequestLayoutOnOpen;
 
@@ -643,6 +869,15 @@ public class CameraView
             }
         }
 
+        @Override
+        public void onFrameAvailable(LeadFrame frame)
+        {
+            for (Callback callback : mCallbacks)
+            {
+                callback.onFrameAvailable(CameraView.this, frame);
+            }
+        }
+
         public void reserveRequestLayoutOnOpen()
         {
             mRequestLayoutOnOpen = true;
@@ -712,6 +947,14 @@ public class CameraView
 
     /**
      * Callback for monitoring events about {@link CameraView}.
+     * <p>
+     * {@link #onCameraOpened} and {@link #onCameraClosed} are called on the main thread.
+     * {@link #onPreviewFrame}, {@link #onFrameAvailable} and {@link #onPictureTaken} are called on
+     * the thread that delivers camera frames: a dedicated background thread on devices using
+     * {@link android.hardware.camera2} (see {@link #setFrameThreadPriority(int)}), and the main
+     * thread with the legacy camera. Frame callbacks must therefore not touch views directly; post
+     * UI updates to the main thread and keep the work done inside the callback short, as the next
+     * frame is not delivered before it returns.
      */
     @SuppressWarnings("UnusedParameters")
     public abstract static class Callback
@@ -746,11 +989,27 @@ public class CameraView
         }
 
         /**
-         * Called when a picture is taken.
+         * Called for every preview frame when the preview format is {@link #PREVIEW_FORMAT_NV21}.
+         * The NV21 buffer is recycled once this method returns; copy it if it is needed later.
+         * {@link LeadSize#getWidth()} and {@link LeadSize#getHeight()} are the dimensions of the
+         * buffer, the measured size is that of the preview view.
          */
         public void onPreviewFrame(CameraView cameraView, LeadSize surfaceSize)
         {
 
         }
+
+        /**
+         * Called for every preview frame when the preview format is
+         * {@link #PREVIEW_FORMAT_YUV_420_888}. The frame is only valid until this method returns
+         * unless {@link LeadFrame#retain()} is called on it, in which case it must be released with
+         * {@link LeadFrame#release()} once processed.
+         *
+         * @param cameraView The associated {@link CameraView}.
+         * @param frame      The preview frame.
+         */
+        public void onFrameAvailable(CameraView cameraView, LeadFrame frame)
+        {
+        }
     }
 }
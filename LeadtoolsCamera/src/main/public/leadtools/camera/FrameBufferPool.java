@@ -0,0 +1,110 @@
+package leadtools.camera;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of frame-sized byte arrays shared by the camera back-ends, so that preview frames
+ * are delivered without allocating a new array per frame.
+ * <p>
+ * At most {@link #getCapacity()} buffers of the current size exist at any time. When every buffer
+ * is in use {@link #acquire(int)} returns {@code null} and the frame should be dropped. Requesting
+ * a different size discards the idle buffers of the old size.
+ */
+public class FrameBufferPool
+{
+    private final ArrayDeque<byte[]> mFree = new ArrayDeque<>();
+
+    private int mCapacity;
+
+    private int mBufferSize;
+
+    private int mInUse;
+
+    private long mAllocationCount;
+
+    FrameBufferPool(int capacity)
+    {
+        mCapacity = capacity;
+    }
+
+    /**
+     * Gets an idle buffer of the given size, allocating one if the pool has not reached its
+     * capacity yet.
+     *
+     * @param size The required buffer size in bytes.
+     * @return A buffer of exactly {@code size} bytes, or {@code null} if every buffer is in use.
+     */
+    synchronized byte[] acquire(int size)
+    {
+        if (size != mBufferSize)
+        {
+            mFree.clear();
+            mInUse = 0;
+            mBufferSize = size;
+        }
+        byte[] buffer = mFree.poll();
+        if (buffer == null)
+        {
+            if (mInUse >= mCapacity)
+                return null;
+            buffer = new byte[size];
+            mAllocationCount++;
+        }
+        mInUse++;
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)} to the pool. Buffers of a stale size are
+     * dropped.
+     *
+     * @param buffer The buffer to return.
+     */
+    synchronized void release(byte[] buffer)
+    {
+        if (buffer == null || buffer.length != mBufferSize)
+            return;
+        if (mInUse > 0)
+            mInUse--;
+        if (mFree.size() + mInUse < mCapacity)
+            mFree.push(buffer);
+    }
+
+    /**
+     * Sets the maximum number of buffers kept by the pool. Idle buffers above the new capacity are
+     * dropped.
+     */
+    synchronized void setCapacity(int capacity)
+    {
+        mCapacity = capacity;
+        while (!mFree.isEmpty() && mFree.size() + mInUse > mCapacity)
+        {
+            mFree.pop();
+        }
+    }
+
+    /**
+     * @return The maximum number of buffers kept by the pool.
+     */
+    public synchronized int getCapacity()
+    {
+        return mCapacity;
+    }
+
+    /**
+     * @return The number of buffers currently handed out.
+     */
+    public synchronized int getInUseCount()
+    {
+        return mInUse;
+    }
+
+    /**
+     * @return The total number of buffers allocated by the pool since it was created. This stays
+     * constant while the camera streams at a fixed preview size.
+     */
+    public synchronized long getAllocationCount()
+    {
+        return mAllocationCount;
+    }
+}
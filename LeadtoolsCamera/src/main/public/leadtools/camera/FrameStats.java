@@ -0,0 +1,116 @@
+package leadtools.camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the preview frames taken from the camera, and what became of them, so that
+ * {@link CameraView#setMaxPreviewImages(int)} can be tuned from data.
+ * <p>
+ * A frame is <em>acquired</em> when it is taken from the camera. It is then either
+ * <em>dropped</em> without being delivered, because the consumers fell behind (see
+ * {@link CameraView#setBackpressurePolicy(int)}) or no buffer was available, or delivered and
+ * eventually <em>released</em> once every reference to it is gone. Frames that are acquired and
+ * neither dropped nor released are in flight. The counters are updated from the camera and
+ * consumer threads and can be read from any thread.
+ */
+public class FrameStats
+{
+    private final AtomicLong mAcquired = new AtomicLong();
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    private final AtomicLong mReleased = new AtomicLong();
+
+    private final AtomicInteger mInFlight = new AtomicInteger();
+
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+
+    FrameStats()
+    {
+    }
+
+    void onAcquired()
+    {
+        mAcquired.incrementAndGet();
+        int inFlight = mInFlight.incrementAndGet();
+        while (true)
+        {
+            int max = mMaxInFlight.get();
+            if (inFlight <= max || mMaxInFlight.compareAndSet(max, inFlight))
+                break;
+        }
+    }
+
+    void onDropped()
+    {
+        mDropped.incrementAndGet();
+        mInFlight.decrementAndGet();
+    }
+
+    void onReleased()
+    {
+        mReleased.incrementAndGet();
+        mInFlight.decrementAndGet();
+    }
+
+    /**
+     * @return The number of frames taken from the camera.
+     */
+    public long getAcquiredCount()
+    {
+        return mAcquired.get();
+    }
+
+    /**
+     * @return The number of acquired frames that were discarded without being delivered.
+     */
+    public long getDroppedCount()
+    {
+        return mDropped.get();
+    }
+
+    /**
+     * @return The number of delivered frames whose last reference has been released.
+     */
+    public long getReleasedCount()
+    {
+        return mReleased.get();
+    }
+
+    /**
+     * @return The number of frames acquired and not yet dropped or released.
+     */
+    public int getInFlightCount()
+    {
+        return mInFlight.get();
+    }
+
+    /**
+     * @return The highest number of frames that were in flight at the same time since the last
+     * {@link #reset()}. When this reaches the max preview images, consumers are falling behind.
+     */
+    public int getMaxInFlightCount()
+    {
+        return mMaxInFlight.get();
+    }
+
+    /**
+     * Clears the counters. Frames currently in flight remain counted as such.
+     */
+    public void reset()
+    {
+        mAcquired.set(0);
+        mDropped.set(0);
+        mReleased.set(0);
+        mMaxInFlight.set(mInFlight.get());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FrameStats{acquired=" + getAcquiredCount() + ", dropped=" + getDroppedCount() +
+                ", released=" + getReleasedCount() + ", inFlight=" + getInFlightCount() +
+                ", maxInFlight=" + getMaxInFlightCount() + "}";
+    }
+}
@@ -0,0 +1,195 @@
+package leadtools.camera;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A preview frame in YUV_420_888 layout that exposes the camera planes directly, without copying
+ * them into an NV21 array.
+ * <p>
+ * The frame is reference counted. It is delivered to {@link CameraView.Callback#onFrameAvailable}
+ * holding one reference that is dropped as soon as the callback returns. A consumer that needs the
+ * pixels after returning from the callback (for example to process them on a worker thread) must
+ * call {@link #retain()} inside the callback and {@link #release()} once it is done. The
+ * underlying camera buffer is handed back to the camera only when the last reference is released,
+ * so frames must not be held longer than necessary.
+ * <p>
+ * The plane buffers are shared with the camera; read them with absolute {@code get(int)} calls
+ * and do not modify their position, limit or contents.
+ */
+public class LeadFrame
+{
+    /**
+     * Y (luma) plane index.
+     */
+    public static final int PLANE_Y = 0;
+
+    /**
+     * U (Cb) plane index.
+     */
+    public static final int PLANE_U = 1;
+
+    /**
+     * V (Cr) plane index.
+     */
+    public static final int PLANE_V = 2;
+
+    /**
+     * A single image plane with its row and pixel strides.
+     */
+    public static final class Plane
+    {
+        private final ByteBuffer buffer;
+        private final int rowStride;
+        private final int pixelStride;
+
+        public Plane(ByteBuffer buffer, int rowStride, int pixelStride)
+        {
+            this.buffer = buffer;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+
+        public ByteBuffer getBuffer()
+        {
+            return buffer;
+        }
+
+        public int getRowStride()
+        {
+            return rowStride;
+        }
+
+        public int getPixelStride()
+        {
+            return pixelStride;
+        }
+    }
+
+    /**
+     * Invoked once the last reference to a frame is released.
+     */
+    interface Releaser
+    {
+        void onFrameReleased(LeadFrame frame);
+    }
+
+    private final int measuredWidth;
+    private final int measuredHeight;
+    private final int width;
+    private final int height;
+    private final long timestamp;
+    private final Plane[] planes;
+    private final Releaser releaser;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    LeadFrame(int measuredWidth, int measuredHeight, int width, int height, long timestamp,
+              Plane[] planes, Releaser releaser)
+    {
+        this.measuredWidth = measuredWidth;
+        this.measuredHeight = measuredHeight;
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        this.planes = planes;
+        this.releaser = releaser;
+    }
+
+    /**
+     * @return The measured width of the preview view the frame was captured for.
+     */
+    public int getMeasuredWidth()
+    {
+        return measuredWidth;
+    }
+
+    /**
+     * @return The measured height of the preview view the frame was captured for.
+     */
+    public int getMeasuredHeight()
+    {
+        return measuredHeight;
+    }
+
+    /**
+     * @return The frame width in pixels.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The frame height in pixels.
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return The capture timestamp in nanoseconds, as reported by the camera.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * @param index One of {@link #PLANE_Y}, {@link #PLANE_U} or {@link #PLANE_V}.
+     * @return The requested plane.
+     * @throws IllegalStateException when the frame has already been released.
+     */
+    public Plane getPlane(int index)
+    {
+        if (isReleased())
+            throw new IllegalStateException("Frame has already been released");
+        return planes[index];
+    }
+
+    /**
+     * Adds a reference to this frame, keeping its buffers valid until a matching
+     * {@link #release()}.
+     *
+     * @return This frame.
+     * @throws IllegalStateException when the frame has already been released.
+     */
+    public LeadFrame retain()
+    {
+        while (true)
+        {
+            int count = refCount.get();
+            if (count <= 0)
+                throw new IllegalStateException("Frame has already been released");
+            if (refCount.compareAndSet(count, count + 1))
+                return this;
+        }
+    }
+
+    /**
+     * Drops a reference to this frame. The camera buffer is returned once every reference has been
+     * released; the frame must not be accessed afterwards.
+     */
+    public void release()
+    {
+        int count = refCount.decrementAndGet();
+        if (count == 0)
+        {
+            if (releaser != null)
+                releaser.onFrameReleased(this);
+        }
+        else if (count < 0)
+        {
+            refCount.set(0);
+            throw new IllegalStateException("Frame released more times than retained");
+        }
+    }
+
+    /**
+     * @return {@code true} once every reference to this frame has been released.
+     */
+    public boolean isReleased()
+    {
+        return refCount.get() <= 0;
+    }
+}
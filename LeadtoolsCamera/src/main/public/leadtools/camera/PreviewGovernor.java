@@ -0,0 +1,238 @@
+package leadtools.camera;
+
+/**
+ * Adapts the preview stream to what the frame consumers actually process.
+ * <p>
+ * The governor walks a ladder of {@link Level}s, from the fastest and largest stream down to the
+ * cheapest one. Consumers report the frames they are offered, the frames they drop because they
+ * are busy and how long each processed frame took. At every evaluation window the governor
+ * compares the frame rate of the current level with the rate the consumers sustain:
+ * <ul>
+ * <li>when most offered frames are dropped and the camera produces more than twice what is
+ * processed, it steps down one level;</li>
+ * <li>when hardly any frame is dropped and the next level up would produce at most twice what is
+ * processed, it steps up one level.</li>
+ * </ul>
+ * A change is followed by a cooldown so that the new level is measured before the next one.
+ * Attach it with {@link CameraView#setPreviewGovernor(PreviewGovernor)}, which applies the levels.
+ * The reporting methods can be called from any thread.
+ */
+public class PreviewGovernor
+{
+    /**
+     * A preview configuration, applied through {@link CameraView#setTargetFrameRate(int)},
+     * {@link CameraView#setMaxPreviewSizeMP(float)} and {@link CameraView#setMaxPreviewImages(int)}.
+     * Changing the preview size or the number of images restarts the camera, so a ladder should
+     * change at most one of them per step.
+     */
+    public static final class Level
+    {
+        public final int frameRate;
+
+        public final float maxPreviewSizeMP;
+
+        public final int maxPreviewImages;
+
+        public Level(int frameRate, float maxPreviewSizeMP, int maxPreviewImages)
+        {
+            this.frameRate = frameRate;
+            this.maxPreviewSizeMP = maxPreviewSizeMP;
+            this.maxPreviewImages = maxPreviewImages;
+        }
+
+        @Override
+        public String toString()
+        {
+            return frameRate + " fps, " + maxPreviewSizeMP + " MP, " + maxPreviewImages + " images";
+        }
+    }
+
+    public static final long DEFAULT_WINDOW_NANOS = 2000000000L;
+
+    /**
+     * Share of dropped frames above which the stream may step down
+     */
+    private static final float STEP_DOWN_DROP_RATE = 0.5f;
+
+    /**
+     * Share of dropped frames below which the stream may step up
+     */
+    private static final float STEP_UP_DROP_RATE = 0.1f;
+
+    /**
+     * Most frames produced per frame processed before the stream is considered wasteful
+     */
+    private static final float MAX_OVERSUPPLY = 2f;
+
+    /**
+     * Windows to wait after a change before the next one
+     */
+    private static final int COOLDOWN_WINDOWS = 2;
+
+    private final Level[] mLevels;
+
+    private final long mWindowNanos;
+
+    private int mParallelism = 1;
+
+    private int mLevel;
+
+    private long mWindowStart = -1;
+
+    private int mCooldown;
+
+    private long mOffered;
+
+    private long mDropped;
+
+    private long mProcessed;
+
+    private long mProcessingNanos;
+
+    /**
+     * @param levels From the fastest, largest stream to the cheapest one. The governor starts at
+     *               the first.
+     */
+    public PreviewGovernor(Level[] levels)
+    {
+        this(levels, DEFAULT_WINDOW_NANOS);
+    }
+
+    public PreviewGovernor(Level[] levels, long windowNanos)
+    {
+        if (levels.length == 0)
+            throw new IllegalArgumentException("At least one level is required");
+        mLevels = levels.clone();
+        mWindowNanos = windowNanos;
+    }
+
+    /**
+     * Builds a ladder from a stream's current settings: 30, 20 and 15 fps, then one image less,
+     * then at most 1 MP at 10 fps.
+     */
+    public static Level[] defaultLevels(float maxPreviewSizeMP, int maxPreviewImages)
+    {
+        int fewerImages = Math.max(2, maxPreviewImages - 1);
+        return new Level[]{
+                new Level(30, maxPreviewSizeMP, maxPreviewImages),
+                new Level(20, maxPreviewSizeMP, maxPreviewImages),
+                new Level(15, maxPreviewSizeMP, fewerImages),
+                new Level(10, Math.min(maxPreviewSizeMP, 1f), fewerImages)
+        };
+    }
+
+    /**
+     * @param parallelism The number of frames the consumers process at the same time, e.g. their
+     *                    worker count.
+     */
+    public synchronized void setParallelism(int parallelism)
+    {
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Reports a frame offered to the consumers.
+     */
+    public synchronized void onFrameOffered()
+    {
+        mOffered++;
+    }
+
+    /**
+     * Reports an offered frame that was discarded without being processed.
+     */
+    public synchronized void onFrameDropped()
+    {
+        mDropped++;
+    }
+
+    /**
+     * Reports a processed frame.
+     *
+     * @param processingNanos The time the consumer spent on the frame.
+     */
+    public synchronized void onFrameProcessed(long processingNanos)
+    {
+        mProcessed++;
+        mProcessingNanos += Math.max(0, processingNanos);
+    }
+
+    /**
+     * Closes the current window if it has elapsed and moves to another level if warranted.
+     *
+     * @param nowNanos The current time, from {@link System#nanoTime()}.
+     * @return {@code true} if the level changed.
+     */
+    public synchronized boolean update(long nowNanos)
+    {
+        if (mWindowStart < 0)
+        {
+            mWindowStart = nowNanos;
+            return false;
+        }
+        if (nowNanos - mWindowStart < mWindowNanos)
+            return false;
+
+        long offered = mOffered;
+        long dropped = mDropped;
+        long processed = mProcessed;
+        long processingNanos = mProcessingNanos;
+        mWindowStart = nowNanos;
+        mOffered = 0;
+        mDropped = 0;
+        mProcessed = 0;
+        mProcessingNanos = 0;
+
+        if (mCooldown > 0)
+        {
+            mCooldown--;
+            return false;
+        }
+        // Nothing to learn while the consumers are idle, e.g. scanning is paused
+        if (offered == 0 || processed == 0)
+            return false;
+
+        float dropRate = (float)dropped / offered;
+        double processedRate = mParallelism * 1e9 * processed / Math.max(1, processingNanos);
+        if (dropRate > STEP_DOWN_DROP_RATE && mLevel < mLevels.length - 1 &&
+                mLevels[mLevel].frameRate > processedRate * MAX_OVERSUPPLY)
+        {
+            mLevel++;
+        }
+        else if (dropRate < STEP_UP_DROP_RATE && mLevel > 0 &&
+                mLevels[mLevel - 1].frameRate <= processedRate * MAX_OVERSUPPLY)
+        {
+            mLevel--;
+        }
+        else
+        {
+            return false;
+        }
+        mCooldown = COOLDOWN_WINDOWS;
+        return true;
+    }
+
+    public synchronized Level getLevel()
+    {
+        return mLevels[mLevel];
+    }
+
+    public synchronized int getLevelIndex()
+    {
+        return mLevel;
+    }
+
+    /**
+     * Returns to the first level and forgets the current window.
+     */
+    public synchronized void reset()
+    {
+        mLevel = 0;
+        mWindowStart = -1;
+        mCooldown = 0;
+        mOffered = 0;
+        mDropped = 0;
+        mProcessed = 0;
+        mProcessingNanos = 0;
+    }
+}
@@ -0,0 +1,51 @@
+package leadtools.camera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Plain JVM tests of the {@link CameraCapabilityCache} entry encoding.
+ */
+public class CameraCapabilityCacheTest
+{
+    @Test
+    public void entriesRoundTrip()
+    {
+        CameraCapabilityCache.Entry entry = new CameraCapabilityCache.Entry(
+                "0", Constants.FACING_BACK, 90,
+                Arrays.asList(new Size(1920, 1080), new Size(1280, 720), new Size(640, 480)),
+                Arrays.asList(new Size(4000, 3000), new Size(1920, 1080)));
+
+        String encoded = CameraCapabilityCache.encode(entry);
+        CameraCapabilityCache.Entry decoded = CameraCapabilityCache.decode("0", encoded);
+
+        assertEquals("1|0|90|1920x1080,1280x720,640x480|4000x3000,1920x1080", encoded);
+        assertEquals("0", decoded.cameraId);
+        assertEquals(Constants.FACING_BACK, decoded.facing);
+        assertEquals(90, decoded.sensorOrientation);
+        assertEquals(entry.previewSizes, decoded.previewSizes);
+        assertEquals(entry.pictureSizes, decoded.pictureSizes);
+    }
+
+    @Test
+    public void rejectsMissingOrMalformedEntries()
+    {
+        assertNull(CameraCapabilityCache.decode("0", null));
+        assertNull(CameraCapabilityCache.decode("0", ""));
+        assertNull(CameraCapabilityCache.decode("0", "1|0|90|1920x1080"));
+        assertNull(CameraCapabilityCache.decode("0", "1|0|90|1920x|640x480"));
+        assertNull(CameraCapabilityCache.decode("0", "1|0|ninety|1920x1080|640x480"));
+        // Another format version
+        assertNull(CameraCapabilityCache.decode("0", "0|0|90|1920x1080|640x480"));
+        // No sizes
+        assertNull(CameraCapabilityCache.decode("0", CameraCapabilityCache.encode(
+                new CameraCapabilityCache.Entry("0", Constants.FACING_BACK, 90,
+                                                Collections.<Size>emptyList(),
+                                                Collections.<Size>emptyList()))));
+    }
+}
@@ -0,0 +1,47 @@
+package leadtools.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Plain JVM tests of {@link FrameStats}.
+ */
+public class FrameStatsTest
+{
+    @Test
+    public void countsFramesThroughTheirLifecycle()
+    {
+        FrameStats stats = new FrameStats();
+        stats.onAcquired();
+        stats.onAcquired();
+        stats.onAcquired();
+        assertEquals(3, stats.getInFlightCount());
+
+        stats.onDropped();
+        stats.onReleased();
+        assertEquals(3, stats.getAcquiredCount());
+        assertEquals(1, stats.getDroppedCount());
+        assertEquals(1, stats.getReleasedCount());
+        assertEquals(1, stats.getInFlightCount());
+        assertEquals(3, stats.getMaxInFlightCount());
+    }
+
+    @Test
+    public void resetKeepsFramesInFlight()
+    {
+        FrameStats stats = new FrameStats();
+        stats.onAcquired();
+        stats.onAcquired();
+        stats.onReleased();
+        stats.reset();
+        assertEquals(0, stats.getAcquiredCount());
+        assertEquals(0, stats.getReleasedCount());
+        assertEquals(1, stats.getInFlightCount());
+        assertEquals(1, stats.getMaxInFlightCount());
+
+        stats.onReleased();
+        assertEquals(0, stats.getInFlightCount());
+        assertEquals(1, stats.getReleasedCount());
+    }
+}
@@ -0,0 +1,132 @@
+package leadtools.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plain JVM tests of {@link PreviewGovernor}.
+ */
+public class PreviewGovernorTest
+{
+    private static final long WINDOW = 1000L;
+
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Reports one window of {@code offered} frames, of which {@code processed} took
+     * {@code nanosEach} and the rest were dropped
+     */
+    private static void report(PreviewGovernor governor, int offered, int processed,
+                               long nanosEach)
+    {
+        for (int i = 0; i < offered; i++)
+        {
+            governor.onFrameOffered();
+        }
+        for (int i = processed; i < offered; i++)
+        {
+            governor.onFrameDropped();
+        }
+        for (int i = 0; i < processed; i++)
+        {
+            governor.onFrameProcessed(nanosEach);
+        }
+    }
+
+    private static PreviewGovernor governor()
+    {
+        PreviewGovernor governor = new PreviewGovernor(PreviewGovernor.defaultLevels(2.1f, 4),
+                                                       WINDOW);
+        governor.update(0);
+        return governor;
+    }
+
+    @Test
+    public void stepsDownWhenConsumersFallBehind()
+    {
+        PreviewGovernor governor = governor();
+        // 30 fps offered, 5 fps processed
+        report(governor, 30, 5, SECOND / 5);
+        assertTrue(governor.update(WINDOW));
+        assertEquals(1, governor.getLevelIndex());
+        assertEquals(20, governor.getLevel().frameRate);
+    }
+
+    @Test
+    public void waitsForCooldownAfterAChange()
+    {
+        PreviewGovernor governor = governor();
+        report(governor, 30, 5, SECOND / 5);
+        assertTrue(governor.update(WINDOW));
+        report(governor, 20, 5, SECOND / 5);
+        assertFalse(governor.update(2 * WINDOW));
+        report(governor, 20, 5, SECOND / 5);
+        assertFalse(governor.update(3 * WINDOW));
+        report(governor, 20, 5, SECOND / 5);
+        assertTrue(governor.update(4 * WINDOW));
+        assertEquals(2, governor.getLevelIndex());
+    }
+
+    @Test
+    public void staysWhenConsumersKeepUp()
+    {
+        PreviewGovernor governor = governor();
+        // Half the frames dropped, but 20 fps processed by two workers: the supply is fine
+        governor.setParallelism(2);
+        report(governor, 30, 15, SECOND / 10);
+        assertFalse(governor.update(WINDOW));
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void stepsUpWhenConsumersStarve()
+    {
+        PreviewGovernor governor = governor();
+        report(governor, 30, 5, SECOND / 5);
+        assertTrue(governor.update(WINDOW));
+        governor.update(2 * WINDOW);
+        governor.update(3 * WINDOW);
+        // Every frame processed, at 20 fps: 30 fps is within twice that
+        report(governor, 20, 20, SECOND / 20);
+        assertTrue(governor.update(4 * WINDOW));
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void ignoresIdleWindows()
+    {
+        PreviewGovernor governor = governor();
+        assertFalse(governor.update(WINDOW));
+        assertFalse(governor.update(2 * WINDOW));
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void doesNotStepPastTheLastLevel()
+    {
+        PreviewGovernor.Level[] levels = {new PreviewGovernor.Level(15, 1f, 2)};
+        PreviewGovernor governor = new PreviewGovernor(levels, WINDOW);
+        governor.update(0);
+        report(governor, 30, 1, SECOND);
+        assertFalse(governor.update(WINDOW));
+    }
+
+    @Test
+    public void defaultLevelsChangeOneRestartingSettingPerStep()
+    {
+        PreviewGovernor.Level[] levels = PreviewGovernor.defaultLevels(2.1f, 4);
+        for (int i = 1; i < levels.length; i++)
+        {
+            int restarts = 0;
+            if (levels[i].maxPreviewImages != levels[i - 1].maxPreviewImages)
+                restarts++;
+            if (levels[i].maxPreviewSizeMP != levels[i - 1].maxPreviewSizeMP)
+                restarts++;
+            assertTrue(restarts <= 1);
+            assertTrue(levels[i].frameRate < levels[i - 1].frameRate);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package leadtools.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Plain JVM tests of {@link YuvConverter} using synthetic plane buffers.
+ */
+public class YuvConverterTest {
+
+   private static final int WIDTH = 6;
+   private static final int HEIGHT = 4;
+
+   /**
+    * Builds a plane whose rows are padded to {@code rowStride} and whose samples are
+    * {@code pixelStride} apart. Sample (x, y) has the value {@code base + y * 16 + x}; padding bytes
+    * are set to -1.
+    */
+   private static ByteBuffer plane(int width, int height, int rowStride, int pixelStride, int base) {
+      // The last row is not padded, as with android.media.Image planes
+      byte[] data = new byte[rowStride * (height - 1) + (width - 1) * pixelStride + 1];
+      java.util.Arrays.fill(data, (byte) -1);
+      for (int y = 0; y < height; y++) {
+         for (int x = 0; x < width; x++) {
+            data[y * rowStride + x * pixelStride] = (byte) (base + y * 16 + x);
+         }
+      }
+      return ByteBuffer.wrap(data);
+   }
+
+   private static byte[] expectedLuma(int left, int top, int width, int height) {
+      byte[] expected = new byte[width * height];
+      for (int y = 0; y < height; y++) {
+         for (int x = 0; x < width; x++) {
+            expected[y * width + x] = (byte) ((top + y) * 16 + left + x);
+         }
+      }
+      return expected;
+   }
+
+   @Test
+   public void extractLuma_ignoresRowPadding() {
+      ByteBuffer y = plane(WIDTH, HEIGHT, 8, 1, 0);
+      byte[] out = new byte[WIDTH * HEIGHT];
+
+      YuvConverter.extractLuma(y, 8, 1, WIDTH, HEIGHT, out);
+
+      assertArrayEquals(expectedLuma(0, 0, WIDTH, HEIGHT), out);
+   }
+
+   @Test
+   public void extractLuma_handlesPixelStride() {
+      ByteBuffer y = plane(WIDTH, HEIGHT, 16, 2, 0);
+      byte[] out = new byte[WIDTH * HEIGHT];
+
+      YuvConverter.extractLuma(y, 16, 2, WIDTH, HEIGHT, out);
+
+      assertArrayEquals(expectedLuma(0, 0, WIDTH, HEIGHT), out);
+   }
+
+   @Test
+   public void extractLuma_copiesOnlyRegionOfInterest() {
+      ByteBuffer y = plane(WIDTH, HEIGHT, 8, 1, 0);
+      byte[] out = new byte[3 * 2];
+
+      YuvConverter.extractLuma(y, 8, 1, 2, 1, 3, 2, out);
+
+      assertArrayEquals(expectedLuma(2, 1, 3, 2), out);
+   }
+
+   @Test
+   public void extractLuma_doesNotMoveBufferPosition() {
+      ByteBuffer y = plane(WIDTH, HEIGHT, 8, 1, 0);
+      byte[] out = new byte[WIDTH * HEIGHT];
+
+      YuvConverter.extractLuma(y, 8, 1, WIDTH, HEIGHT, out);
+
+      assertEquals(0, y.position());
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void extractLuma_rejectsSmallOutput() {
+      YuvConverter.extractLuma(plane(WIDTH, HEIGHT, 8, 1, 0), 8, 1, WIDTH, HEIGHT, new byte[4]);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void extractLuma_rejectsRegionOutsidePlane() {
+      // E.g. bounds computed for a larger frame
+      YuvConverter.extractLuma(plane(WIDTH, HEIGHT, 8, 1, 0), 8, 1, 2, 1, WIDTH, HEIGHT,
+                               new byte[WIDTH * HEIGHT]);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void extractLuma_rejectsNegativeOrigin() {
+      YuvConverter.extractLuma(plane(WIDTH, HEIGHT, 8, 1, 0), 8, 1, -1, 0, 2, 2, new byte[4]);
+   }
+
+   @Test
+   public void extractLumaSubsampled_takesEveryStepSample() {
+      ByteBuffer y = plane(WIDTH, HEIGHT, 16, 2, 0);
+      byte[] out = new byte[2 * 2];
+
+      YuvConverter.extractLumaSubsampled(y, 16, 2, 1, 0, 5, 4, 2, out);
+
+      assertArrayEquals(new byte[]{1, 3, 2 * 16 + 1, 2 * 16 + 3}, out);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void extractLumaSubsampled_rejectsSmallOutput() {
+      YuvConverter.extractLumaSubsampled(plane(WIDTH, HEIGHT, 8, 1, 0), 8, 1, 0, 0, WIDTH, HEIGHT,
+                                         2, new byte[5]);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void extractLumaSubsampled_rejectsRegionOutsidePlane() {
+      YuvConverter.extractLumaSubsampled(plane(WIDTH, HEIGHT, 8, 1, 0), 8, 1, 0, 2, WIDTH,
+                                         HEIGHT, 2, new byte[WIDTH * HEIGHT]);
+   }
+
+   @Test
+   public void toNV21_interleavesSemiPlanarChroma() {
+      int chromaWidth = WIDTH / 2;
+      int chromaHeight = HEIGHT / 2;
+      ByteBuffer y = plane(WIDTH, HEIGHT, 8, 1, 0);
+      ByteBuffer u = plane(chromaWidth, chromaHeight, 8, 2, 64);
+      ByteBuffer v = plane(chromaWidth, chromaHeight, 8, 2, 96);
+      byte[] out = new byte[YuvConverter.nv21Size(WIDTH, HEIGHT)];
+
+      YuvConverter.toNV21(y, 8, 1, u, 8, 2, v, 8, 2, WIDTH, HEIGHT, out);
+
+      byte[] expected = new byte[out.length];
+      System.arraycopy(expectedLuma(0, 0, WIDTH, HEIGHT), 0, expected, 0, WIDTH * HEIGHT);
+      int i = WIDTH * HEIGHT;
+      for (int row = 0; row < chromaHeight; row++) {
+         for (int col = 0; col < chromaWidth; col++) {
+            expected[i++] = (byte) (96 + row * 16 + col);
+            expected[i++] = (byte) (64 + row * 16 + col);
+         }
+      }
+      assertArrayEquals(expected, out);
+   }
+
+   @Test
+   public void nv21Size_roundsChromaUp() {
+      assertEquals(6 * 4 * 3 / 2, YuvConverter.nv21Size(6, 4));
+      assertEquals(5 * 3 + 2 * 3 * 2, YuvConverter.nv21Size(5, 3));
+   }
+
+}
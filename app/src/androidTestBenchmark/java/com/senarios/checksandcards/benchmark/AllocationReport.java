@@ -0,0 +1,49 @@
+package com.senarios.checksandcards.benchmark;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+/**
+ * Reports the Java heap allocations of an operation next to the timings of the benchmark
+ * library. Pixel memory of bitmaps lives in the native heap from API 26 and is not included.
+ */
+final class AllocationReport
+{
+    private static final String TAG = "Benchmark";
+
+    private static final int REPEAT = 20;
+
+    private AllocationReport()
+    {
+    }
+
+    /**
+     * Runs {@code op} a few times with allocation counting enabled on the calling thread and
+     * reports the allocations per run to logcat and to the instrumentation status.
+     */
+    @SuppressWarnings("deprecation")
+    static void measure(String name, Runnable op)
+    {
+        op.run();
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < REPEAT; i++)
+        {
+            op.run();
+        }
+        int count = Debug.getThreadAllocCount();
+        int size = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        String report = name + " allocations/op=" + (count / REPEAT) + " bytes/op=" + (size / REPEAT);
+        Log.i(TAG, report);
+        Bundle status = new Bundle();
+        status.putString("android.studio.display.benchmark", report + "\n");
+        InstrumentationRegistry.getInstrumentation()
+                               .sendStatus(2, status);
+    }
+}
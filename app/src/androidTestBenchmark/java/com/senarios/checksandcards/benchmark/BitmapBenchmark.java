@@ -0,0 +1,127 @@
+package com.senarios.checksandcards.benchmark;
+
+import android.graphics.Bitmap;
+
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.benchmark.BenchmarkState;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.senarios.checksandcards.Imaging.Tools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Bitmap operations of {@link Tools} and the ARGB copy done before recognition, on a 720p frame
+ * and on a MICR band of it. Created bitmaps are recycled inside the timed loop.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitmapBenchmark
+{
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private Bitmap mFrame;
+
+    private byte[] mBandLuma;
+
+    private int mBandWidth;
+
+    private int mBandHeight;
+
+    @Before
+    public void setUp()
+    {
+        mFrame = Bitmap.createBitmap(1280, 720, Bitmap.Config.ARGB_8888);
+        mFrame.eraseColor(0xFF808080);
+        mBandWidth = 1110;
+        mBandHeight = 100;
+        mBandLuma = new byte[mBandWidth * mBandHeight];
+        for (int i = 0; i < mBandLuma.length; i++)
+        {
+            mBandLuma[i] = (byte)(i * 31);
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        mFrame.recycle();
+    }
+
+    @Test
+    public void preRotateBitmap()
+    {
+        Runnable op = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Tools.preRotateBitmap(mFrame, 90)
+                     .recycle();
+            }
+        };
+        run(op);
+        AllocationReport.measure("preRotateBitmap", op);
+    }
+
+    @Test
+    public void createScaledBitmap()
+    {
+        Runnable op = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Tools.createScaledBitmap(mFrame, 640, 360, Tools.ScalingLogic.FIT)
+                     .recycle();
+            }
+        };
+        run(op);
+        AllocationReport.measure("createScaledBitmap", op);
+    }
+
+    @Test
+    public void copyToArgb8888()
+    {
+        Runnable op = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mFrame.copy(Bitmap.Config.ARGB_8888, true)
+                      .recycle();
+            }
+        };
+        run(op);
+        AllocationReport.measure("copyToArgb8888", op);
+    }
+
+    @Test
+    public void grayscaleToBitmap()
+    {
+        Runnable op = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Tools.grayscaleToBitmap(mBandLuma, mBandWidth, mBandHeight)
+                     .recycle();
+            }
+        };
+        run(op);
+        AllocationReport.measure("grayscaleToBitmap", op);
+    }
+
+    private void run(Runnable op)
+    {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning())
+        {
+            op.run();
+        }
+    }
+}
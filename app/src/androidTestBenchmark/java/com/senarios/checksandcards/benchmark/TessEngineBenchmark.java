@@ -0,0 +1,181 @@
+package com.senarios.checksandcards.benchmark;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.ReadFile;
+import com.senarios.checksandcards.TessTool.ResultClass;
+import com.senarios.checksandcards.TessTool.TessEngine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Recognition of MICR band crops by {@link TessEngine}, through the grayscale {@link Pix} path
+ * used by the live scan and through the {@link Bitmap} path.
+ * <p>
+ * The crops are read from the {@code micr/} folder of the test assets, cycling through all of
+ * them; without any, a synthetic band is drawn so that the suite still runs, though its timings
+ * are then only comparable between runs of the same device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TessEngineBenchmark
+{
+    private static final String CORPUS_DIR = "micr";
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private TessEngine mEngine;
+
+    private final ArrayList<Bitmap> mCrops = new ArrayList<>();
+
+    private final ArrayList<Pix> mPixes = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mEngine = TessEngine.Generate(InstrumentationRegistry.getInstrumentation()
+                                                             .getTargetContext());
+        if (!mEngine.init())
+            throw new IllegalStateException("Could not initialize the OCR engine");
+
+        AssetManager assets = InstrumentationRegistry.getInstrumentation()
+                                                     .getContext()
+                                                     .getAssets();
+        String[] names = assets.list(CORPUS_DIR);
+        if (names != null)
+        {
+            for (String name : names)
+            {
+                InputStream in = assets.open(CORPUS_DIR + "/" + name);
+                try
+                {
+                    Bitmap bitmap = BitmapFactory.decodeStream(in);
+                    if (bitmap != null)
+                        mCrops.add(bitmap);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        if (mCrops.isEmpty())
+            mCrops.add(drawSyntheticBand());
+
+        for (Bitmap crop : mCrops)
+        {
+            mPixes.add(ReadFile.readBytes8(toLuma(crop), crop.getWidth(), crop.getHeight()));
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (Pix pix : mPixes)
+        {
+            pix.recycle();
+        }
+        for (Bitmap crop : mCrops)
+        {
+            crop.recycle();
+        }
+        mEngine.end();
+    }
+
+    @Test
+    public void detectTextPix()
+    {
+        Runnable op = new Runnable()
+        {
+            private int mIndex;
+
+            @Override
+            public void run()
+            {
+                recycle(mEngine.detectText(mPixes.get(mIndex++ % mPixes.size())));
+            }
+        };
+        run(op);
+        AllocationReport.measure("detectTextPix", op);
+    }
+
+    @Test
+    public void detectTextBitmap()
+    {
+        Runnable op = new Runnable()
+        {
+            private int mIndex;
+
+            @Override
+            public void run()
+            {
+                recycle(mEngine.detectText(mCrops.get(mIndex++ % mCrops.size())));
+            }
+        };
+        run(op);
+        AllocationReport.measure("detectTextBitmap", op);
+    }
+
+    private void run(Runnable op)
+    {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning())
+        {
+            op.run();
+        }
+    }
+
+    private static void recycle(ResultClass result)
+    {
+        if (result != null)
+            result.recycle();
+    }
+
+    private static byte[] toLuma(Bitmap bitmap)
+    {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        byte[] luma = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++)
+        {
+            int c = pixels[i];
+            luma[i] = (byte)((Color.red(c) * 77 + Color.green(c) * 150 + Color.blue(c) * 29) >> 8);
+        }
+        return luma;
+    }
+
+    private static Bitmap drawSyntheticBand()
+    {
+        Bitmap bitmap = Bitmap.createBitmap(1110, 100, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.BLACK);
+        paint.setTypeface(Typeface.MONOSPACE);
+        paint.setTextSize(56);
+        canvas.drawText("A021000021A 123456789C 0101", 20, 72, paint);
+        return bitmap;
+    }
+}
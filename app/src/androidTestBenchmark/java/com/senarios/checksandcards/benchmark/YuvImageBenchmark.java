@@ -0,0 +1,79 @@
+package com.senarios.checksandcards.benchmark;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+import leadtools.camera.YuvConverter;
+
+/**
+ * JPEG compression of NV21 preview frames, the path used by the NV21 preview format, for the full
+ * frame and for the MICR band only.
+ */
+@RunWith(AndroidJUnit4.class)
+public class YuvImageBenchmark
+{
+    private static final int WIDTH = 1280;
+
+    private static final int HEIGHT = 720;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private YuvImage mImage;
+
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream(512 * 1024);
+
+    @Before
+    public void setUp()
+    {
+        byte[] nv21 = new byte[YuvConverter.nv21Size(WIDTH, HEIGHT)];
+        for (int i = 0; i < nv21.length; i++)
+        {
+            nv21[i] = (byte)(i * 31);
+        }
+        mImage = new YuvImage(nv21, ImageFormat.NV21, WIDTH, HEIGHT, null);
+    }
+
+    @Test
+    public void compressFullFrame()
+    {
+        compress("compressFullFrame", new Rect(0, 0, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void compressMicrBand()
+    {
+        compress("compressMicrBand", new Rect(84, 562, 1194, 662));
+    }
+
+    private void compress(String name, final Rect rect)
+    {
+        Runnable op = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mOut.reset();
+                mImage.compressToJpeg(rect, 90, mOut);
+            }
+        };
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning())
+        {
+            op.run();
+        }
+        AllocationReport.measure(name, op);
+    }
+}
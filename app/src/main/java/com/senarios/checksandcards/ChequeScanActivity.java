@@ -6,31 +6,32 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Toast;
 
 import com.senarios.checksandcards.Dialogs.ImageDialog;
 import com.senarios.checksandcards.Imaging.Tools;
-import com.senarios.checksandcards.TessTool.ResultClass;
-import com.senarios.checksandcards.TessTool.TessAsyncEngine;
+import com.senarios.checksandcards.Metrics.MetricsOverlayView;
+import com.senarios.checksandcards.Metrics.MetricsRegistry;
+import com.senarios.checksandcards.Scanning.FrameQualityGate;
+import com.senarios.checksandcards.Scanning.MicrConsensus;
+import com.senarios.checksandcards.Scanning.MicrLineParser;
+import com.senarios.checksandcards.Scanning.RecognitionScheduler;
+import com.senarios.checksandcards.Scanning.ScanMetrics;
+import com.senarios.checksandcards.Scanning.StartupOrchestrator;
+import com.senarios.checksandcards.TessTool.OcrProfile;
 import com.senarios.checksandcards.TessTool.TessEngine;
 import com.senarios.chequescanlibrary.GetMicrDetails;
 
-import java.io.ByteArrayOutputStream;
-
 import leadtools.camera.CameraView;
-import leadtools.camera.LeadSize;
+import leadtools.camera.LeadFrame;
+import leadtools.camera.PreviewGovernor;
+import leadtools.camera.YuvConverter;
 
 public class ChequeScanActivity
         extends AppCompatActivity
@@ -44,19 +45,58 @@ public class ChequeScanActivity
     //    private static final int IMAGE_FILE = 0x0003;
     private static final int IMAGE_LIVE_CAPTURE = 0x0004;
     private static final int CAMERA_RW_REQUEST = 0x0005;
+    // Number of agreeing frames required to accept a MICR line, out of the last CONSENSUS_WINDOW
+    private static final int CONSENSUS_THRESHOLD = 3;
+    private static final int CONSENSUS_WINDOW = 5;
+    // Width of the subsampled search area scored by the quality gate
+    private static final int QUALITY_SAMPLE_WIDTH = 256;
     private Context mContext;
-    private boolean mIsWorking;
+    private static final String TAG = "DBG_" + ChequeScanActivity.class.getName();
+    // Read on the camera frame thread
+    private volatile boolean mIsScanning;
+    private volatile boolean mReadAreaChanged = true;
     private boolean mShouldStartCapture = true;
     private OverlayView mOverlayView;
     private CameraView mCameraView;
-    private LeadRect mMicrReadAreaBounds;
+    // Published by the main thread, read on the camera frame thread
+    private volatile ReadArea mReadArea;
+    // Frame geometry the read area was last computed for; only used on the camera frame thread
+    private int mAreaFrameWidth;
+    private int mAreaFrameHeight;
+    private int mAreaMeasuredWidth;
+    private int mAreaMeasuredHeight;
+    private TessEngine[] mTessEngines;
+    private RecognitionScheduler mRecognitionScheduler;
+    private final ScanMetrics mScanMetrics = new ScanMetrics(new MetricsRegistry());
+    // Created with the activity, so that a cold start is timed from here
+    private final StartupOrchestrator mStartup = new StartupOrchestrator(mScanMetrics);
+    private MicrConsensus mMicrConsensus = new MicrConsensus(CONSENSUS_THRESHOLD,
+                                                             CONSENSUS_WINDOW);
+    private MicrLineParser mMicrParser = new MicrLineParser();
+    private MicrLineParser.Result mMicrLine = new MicrLineParser.Result();
+    // Only used on the frame thread; reset there when mResetQualityGate is set
+    private final FrameQualityGate mQualityGate = new FrameQualityGate();
+    private byte[] mQualitySample = new byte[0];
+    private volatile boolean mResetQualityGate;
 
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
         mContext = this;
+        // One engine per recognition worker, each recognizing a different frame
+        mTessEngines = new TessEngine[RecognitionScheduler.defaultWorkerCount()];
+        for (int i = 0; i < mTessEngines.length; i++)
+        {
+            mTessEngines[i] = TessEngine.Generate(this, OcrProfile.PRODUCTION);
+        }
+        // The trained data and the engines are prepared while the layout is inflated and the
+        // camera opens
+        mStartup.start(this, mTessEngines);
+        setContentView(R.layout.activity_main);
+        mRecognitionScheduler = new RecognitionScheduler(mTessEngines, mRecognitionListener,
+                                                         mScanMetrics);
+        mRecognitionScheduler.start();
         if (!DeviceUtils.checkCapturePermission(this, CAMERA_RW_REQUEST))
             return;
 
@@ -67,9 +107,26 @@ public class ChequeScanActivity
     {
         mCameraView = (CameraView)findViewById(R.id.cameraView);
         if (mCameraView != null)
+        {
             mCameraView.addCallback(mCallback);
+            // Slow the camera down when recognition cannot keep up, starting from the layout
+            // settings
+            PreviewGovernor governor = new PreviewGovernor(
+                    PreviewGovernor.defaultLevels(mCameraView.getMaxPreviewSizeMP(),
+                                                  mCameraView.getMaxPreviewImages()));
+            mRecognitionScheduler.setPreviewGovernor(governor);
+            mCameraView.setPreviewGovernor(governor);
+        }
 
         mOverlayView = (OverlayView)findViewById(R.id.overlayView);
+        if (BuildConfig.DEBUG)
+        {
+            MetricsOverlayView metricsView = (MetricsOverlayView)findViewById(R.id.metricsView);
+            metricsView.setVisibility(View.VISIBLE);
+            metricsView.setRegistry(mScanMetrics.getRegistry());
+            if (mCameraView != null)
+                metricsView.setFrameStats(mCameraView.getFrameStats());
+        }
         ShadowedScrollView sv = (ShadowedScrollView)findViewById(R.id.bottomScrollView);
         sv.setShadowViews(findViewById(R.id.bottomShadowLeft),
                           findViewById(R.id.bottomShadowRight));
@@ -103,6 +160,18 @@ public class ChequeScanActivity
         }
     }
 
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        mRecognitionScheduler.shutdown();
+        // Warm-ups and workers still running find their engine closed and create no other
+        for (TessEngine engine : mTessEngines)
+        {
+            engine.end();
+        }
+    }
+
     @Override
     public void onBackPressed()
     {
@@ -187,14 +256,21 @@ public class ChequeScanActivity
     {
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         mCameraView.setVisibility(View.VISIBLE);
+        mStartup.onCaptureStarted();
         mCameraView.start();
-        mIsWorking = false;
+        mMicrConsensus.reset();
+        mResetQualityGate = true;
+        mIsScanning = true;
     }
 
     private void stopLiveCapture()
     {
         getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        mIsScanning = false;
+        mRecognitionScheduler.clear();
         mCameraView.stop();
+        mScanMetrics.getRegistry()
+                    .dumpToLog(TAG);
     }
 
     private CameraView.Callback mCallback = new CameraView.Callback()
@@ -202,11 +278,14 @@ public class ChequeScanActivity
         @Override
         public void onCameraOpened(CameraView cameraView)
         {
+            mStartup.onCameraOpened();
+            mReadAreaChanged = true;
         }
 
         @Override
         public void onCameraClosed(CameraView cameraView)
         {
+            mReadAreaChanged = true;
             if (mOverlayView != null)
                 mOverlayView.setVisibility(View.INVISIBLE);
             mCameraView.setVisibility(View.INVISIBLE);
@@ -219,168 +298,153 @@ public class ChequeScanActivity
         }
 
         @Override
-        public void onPreviewFrame(CameraView cameraView, LeadSize surfaceSize)
+        public void onFrameAvailable(CameraView cameraView, LeadFrame frame)
         {
-            YuvImage yuvimage = new YuvImage(surfaceSize.getJpegData(), ImageFormat.NV21,
-                                             surfaceSize.getWidth(), surfaceSize.getHeight(), null);
-
-
-            mMicrReadAreaBounds = mOverlayView.updateArea(mCameraView.getWidth(),
-                                                          mCameraView.getHeight(), surfaceSize,
-                                                          yuvimage.getWidth(),
-                                                          yuvimage.getHeight());
-//         // show overlay view
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            yuvimage.compressToJpeg(
-                    new Rect(mMicrReadAreaBounds.getLeft(), mMicrReadAreaBounds.getTop(),
-                             mMicrReadAreaBounds.getRight(), mMicrReadAreaBounds.getBottom()), 100,
-                    baos);
-            byte[] jdata = baos.toByteArray();
-
-            Bitmap bmp = BitmapFactory.decodeByteArray(jdata, 0, jdata.length);
-
+            long start = MetricsRegistry.now();
+            mStartup.onFrame();
+            // Called on the camera frame thread; the overlay is only touched on the main thread
+            // and only when the frame geometry changes
+            if (mReadAreaChanged || frame.getWidth() != mAreaFrameWidth ||
+                    frame.getHeight() != mAreaFrameHeight ||
+                    frame.getMeasuredWidth() != mAreaMeasuredWidth ||
+                    frame.getMeasuredHeight() != mAreaMeasuredHeight)
+            {
+                mReadAreaChanged = false;
+                mAreaFrameWidth = frame.getWidth();
+                mAreaFrameHeight = frame.getHeight();
+                mAreaMeasuredWidth = frame.getMeasuredWidth();
+                mAreaMeasuredHeight = frame.getMeasuredHeight();
+                final int frameWidth = mAreaFrameWidth;
+                final int frameHeight = mAreaFrameHeight;
+                final int measuredWidth = mAreaMeasuredWidth;
+                final int measuredHeight = mAreaMeasuredHeight;
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        updateReadArea(measuredWidth, measuredHeight, frameWidth, frameHeight);
+                    }
+                });
+            }
 
-            mOverlayView.setVisibility(View.VISIBLE);
-            mOverlayView.invalidate();
-            if (bmp != null && !mIsWorking)
+            // Until the main thread has mapped the area for a new frame size, the bounds of the
+            // previous size may not fit this frame; such frames are skipped
+            ReadArea area = mReadArea;
+            LeadRect bounds = area != null && area.frameWidth == frame.getWidth() &&
+                    area.frameHeight == frame.getHeight() ? area.bounds : null;
+            if (mIsScanning && bounds != null && bounds.get_width() > 0 &&
+                    bounds.get_height() > 0 && passesQualityGate(frame, bounds))
             {
-                RecognizeMICRLiveCaptureTask result = new RecognizeMICRLiveCaptureTask();
-                result.execute(ChequeScanActivity.this, bmp);
+                // Only retains the frame; the band is copied when the worker picks it up
+                mRecognitionScheduler.post(frame, bounds);
             }
+            mScanMetrics.frameCallback.recordSince(start);
         }
     };
 
-
-    private class RecognizeMICRLiveCaptureTask
-            extends AsyncTask<Object, Void, ResultClass>
+    /**
+     * Scores a subsampled copy of the search area, so that blurred, badly exposed or moving frames
+     * never reach recognition. Called on the frame thread only.
+     */
+    private boolean passesQualityGate(LeadFrame frame, LeadRect bounds)
     {
-
-        final String TAG = "DBG_" + TessAsyncEngine.class.getName();
-
-        private Bitmap bmp;
-
-        private AppCompatActivity context;
-
-        @Override
-        protected void onPreExecute()
+        long start = MetricsRegistry.now();
+        if (mResetQualityGate)
         {
-            mIsWorking = true;
+            mResetQualityGate = false;
+            mQualityGate.reset();
         }
-
-        @Override
-        protected ResultClass doInBackground(Object... params)
+        int step = Math.max(1, bounds.get_width() / QUALITY_SAMPLE_WIDTH);
+        int width = bounds.get_width() / step;
+        int height = bounds.get_height() / step;
+        if (mQualitySample.length < width * height)
+            mQualitySample = new byte[width * height];
+        YuvConverter.extractLumaSubsampled(frame, bounds.getLeft(), bounds.getTop(),
+                                           bounds.get_width(), bounds.get_height(), step,
+                                           mQualitySample);
+        int verdict = mQualityGate.evaluate(mQualitySample, width, height);
+        mScanMetrics.qualityGate.recordSince(start);
+        switch (verdict)
         {
+            case FrameQualityGate.REJECTED_BLUR:
+                mScanMetrics.framesBlurred.increment();
+                return false;
+            case FrameQualityGate.REJECTED_EXPOSURE:
+                mScanMetrics.framesBadlyExposed.increment();
+                return false;
+            case FrameQualityGate.REJECTED_MOTION:
+                mScanMetrics.framesMoving.increment();
+                return false;
+            default:
+                return true;
+        }
+    }
 
-            try
-            {
-
-                if (params.length < 2)
-                {
-                    Log.e(TAG, "Error passing parameter to execute - missing params");
-                    return null;
-                }
-
-                if (!(params[0] instanceof Activity) || !(params[1] instanceof Bitmap))
-                {
-                    Log.e(TAG, "Error passing parameter to execute(context, bitmap)");
-                    return null;
-                }
-
-                context = (AppCompatActivity)params[0];
-
-                bmp = (Bitmap)params[1];
-
-                if (context == null || bmp == null)
-                {
-                    Log.e(TAG, "Error passed null parameter to execute(context, bitmap)");
-                    return null;
-                }
-
-                int rotate = 0;
-
-                if (params.length == 3 && params[2] != null && params[2] instanceof Integer)
-                {
-                    rotate = (Integer)params[2];
-                }
-
-                if (rotate >= -180 && rotate <= 180 && rotate != 0)
-                {
-                    bmp = Tools.preRotateBitmap(bmp, rotate);
-                    Log.d(TAG, "Rotated OCR bitmap " + rotate + " degrees");
-                }
-
-                TessEngine tessEngine = TessEngine.Generate(context);
+    private void updateReadArea(int measuredWidth, int measuredHeight, int frameWidth, int frameHeight)
+    {
+        LeadRect bounds = mOverlayView.updateArea(mCameraView.getWidth(), mCameraView.getHeight(),
+                                                  measuredWidth, measuredHeight, frameWidth,
+                                                  frameHeight);
+        mReadArea = new ReadArea(bounds, frameWidth, frameHeight);
+//         // show overlay view
+        mOverlayView.setVisibility(View.VISIBLE);
+        mOverlayView.invalidate();
+    }
 
-                bmp = bmp.copy(Bitmap.Config.ARGB_8888, true);
+    /**
+     * The MICR search area in frame coordinates, with the frame size it was mapped for.
+     */
+    private static final class ReadArea
+    {
+        final LeadRect bounds;
 
-                ResultClass result = tessEngine.detectText(bmp);
-                result.rzlt = result.rzlt.replace(" ", "");
-                result.rzlt = result.rzlt.replace("\n", "");
-                //Log.d(TAG, result);
-                return result;
+        final int frameWidth;
 
-            }
-            catch (Exception ex)
-            {
-                Log.d(TAG, "Error: " + ex + "\n" + ex.getMessage());
-            }
+        final int frameHeight;
 
-            return null;
+        ReadArea(LeadRect bounds, int frameWidth, int frameHeight)
+        {
+            this.bounds = bounds;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
         }
+    }
 
+    private RecognitionScheduler.Listener mRecognitionListener = new RecognitionScheduler.Listener()
+    {
         @Override
-        protected void onPostExecute(ResultClass result)
+        public void onRecognized(RecognitionScheduler.Result result)
         {
-            if (result.rzlt.length() > 32)
+            if (!mIsScanning)
+                return;
+            mStartup.onRecognized();
+            long start = MetricsRegistry.now();
+            mScanMetrics.frameToResult.recordSince(result.postedNanos);
+            // Reads with a bad routing checksum never reach the vote
+            if (!mMicrParser.parse(result.text, mMicrLine))
             {
-
-                String fresult = result.rzlt;
-                if (fresult.contains("A") && fresult.contains("C") && fresult.startsWith("C"))
-                {
-                    String[] cSubstrings = fresult.split("C");
-                    String[] aSubstrings = fresult.split("A");
-                    if (cSubstrings.length == 4 && aSubstrings.length == 2)
-                    {
-                        String[] subString1 = cSubstrings[2].split("A");
-                        if (subString1.length == 2)
-                        {
-                            if (isNumeric(subString1[0]) && isNumeric(subString1[1]) && isNumeric(
-                                    cSubstrings[1]))
-                            {
-                                ImageDialog.New()
-                                           .addTitle(subString1[0], subString1[1], cSubstrings[1])
-                                           .addBitmap(bmp)
-                                           .show(context.getSupportFragmentManager(), TAG);
-                                stopLiveCapture();
-                            }
-                        }
-                    }
-                }
+                mScanMetrics.readsRejected.increment();
+                mScanMetrics.parse.recordSince(start);
+                return;
             }
-            mIsWorking = false;
-        }
-
-        @Override
-        protected void onCancelled()
-        {
-            super.onCancelled();
-            mIsWorking = false;
-            Intent returnIntent = new Intent();
-            setResult(Activity.RESULT_CANCELED, returnIntent);
-            finish();
-        }
-    }
 
-    public static boolean isNumeric(String str)
-    {
-        try
-        {
-            Long d = Long.parseLong(str);
-        }
-        catch (NumberFormatException nfe)
-        {
-            return false;
+            // A frame that parses only votes; the line is accepted once enough frames agree
+            String agreed = mMicrConsensus.offer(mMicrLine.line);
+            boolean accepted = agreed != null && mMicrParser.parse(agreed, mMicrLine);
+            mScanMetrics.parse.recordSince(start);
+            if (!accepted)
+                return;
+            mScanMetrics.linesAccepted.increment();
+
+            // The bitmap is only built for the frame that is shown
+            Bitmap bmp = Tools.grayscaleToBitmap(result.luma, result.width, result.height);
+            ImageDialog.New()
+                       .addTitle(mMicrLine.routing.toString(), mMicrLine.account.toString(),
+                                 mMicrLine.cheque.toString())
+                       .addBitmap(bmp)
+                       .show(getSupportFragmentManager(), TAG);
+            stopLiveCapture();
         }
-        return true;
-    }
+    };
 }
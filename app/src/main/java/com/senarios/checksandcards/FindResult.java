@@ -61,6 +61,9 @@ public class FindResult {
             bmp = bmp.copy(Bitmap.Config.ARGB_8888, true);
 
             ResultClass result = tessEngine.detectText(bmp);
+            tessEngine.end();
+            if (result == null)
+                return null;
             result.rzlt = result.rzlt.replace(" ", "");
             result.rzlt = result.rzlt.replace("\n","");
             //Log.d(TAG, result);
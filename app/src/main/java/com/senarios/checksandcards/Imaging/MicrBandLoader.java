@@ -0,0 +1,123 @@
+package com.senarios.checksandcards.Imaging;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Decodes only the MICR band of a still cheque image, subsampled to OCR resolution.
+ * <p>
+ * The image is never decoded in full: {@link BitmapRegionDecoder} decodes the bottom band of the
+ * cheque with an {@code inSampleSize} that keeps it at least {@code targetWidth} pixels wide, into
+ * an {@link Bitmap.Config#RGB_565} bitmap. For a 12 MP capture this is a few hundred KB instead of
+ * the 48 MB of a full ARGB decode. Decoders do not honor {@link Bitmap.Config#ALPHA_8} for JPEG,
+ * so 565 is the smallest config available for photos.
+ */
+public class MicrBandLoader {
+    static final String TAG = "DBG_" + MicrBandLoader.class.getName();
+
+    /**
+     * Share of the cheque height taken by the MICR clear band (5/8 in of 2 3/4 in), with margin
+     */
+    public static final float MICR_BAND_FRACTION = 0.25f;
+
+    /**
+     * Decodes the MICR band of an encoded image, e.g. a JPEG from
+     * {@code CameraView.Callback.onPictureTaken}.
+     *
+     * @param rotationDegrees The clockwise rotation, a multiple of 90, that turns the image
+     *                        upright.
+     * @param targetWidth     The smallest width of the band worth decoding.
+     * @return The upright band, or {@code null} if the image could not be decoded.
+     */
+    public static Bitmap decodeBand(byte[] data, int rotationDegrees, int targetWidth) {
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(data, 0, data.length,
+                    false);
+            return decodeBand(decoder, rotationDegrees, targetWidth);
+        } catch (IOException ex) {
+            Log.e(TAG, "Error decoding image: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the MICR band of an image file.
+     *
+     * @see #decodeBand(byte[], int, int)
+     */
+    public static Bitmap decodeBand(String path, int rotationDegrees, int targetWidth) {
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+            return decodeBand(decoder, rotationDegrees, targetWidth);
+        } catch (IOException ex) {
+            Log.e(TAG, "Error decoding " + path + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private static Bitmap decodeBand(BitmapRegionDecoder decoder, int rotationDegrees,
+                                     int targetWidth) {
+        try {
+            int rotation = ((rotationDegrees % 360) + 360) % 360;
+            Rect region = calculateBandRect(decoder.getWidth(), decoder.getHeight(), rotation);
+            int bandWidth = rotation == 90 || rotation == 270 ? region.height() : region.width();
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inSampleSize = calculateSampleSize(bandWidth, targetWidth);
+            Bitmap band = decoder.decodeRegion(region, options);
+            if (band == null || rotation == 0)
+                return band;
+            Bitmap upright = Tools.rotateBitmap(band, rotation);
+            if (upright != band)
+                band.recycle();
+            return upright;
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * @return The largest power of two that keeps {@code srcWidth} at least {@code targetWidth}
+     * pixels wide, or 1.
+     */
+    public static int calculateSampleSize(int srcWidth, int targetWidth) {
+        int sampleSize = 1;
+        if (targetWidth <= 0)
+            return sampleSize;
+        while (srcWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @param rotation The clockwise rotation, 0, 90, 180 or 270, that turns the image upright.
+     * @return The region of the unrotated image that becomes the bottom band of the upright one.
+     */
+    public static Rect calculateBandRect(int width, int height, int rotation) {
+        switch (rotation) {
+            case 90: {
+                int band = Math.max(1, (int) (width * MICR_BAND_FRACTION));
+                return new Rect(width - band, 0, width, height);
+            }
+            case 180: {
+                int band = Math.max(1, (int) (height * MICR_BAND_FRACTION));
+                return new Rect(0, 0, width, band);
+            }
+            case 270: {
+                int band = Math.max(1, (int) (width * MICR_BAND_FRACTION));
+                return new Rect(0, 0, band, height);
+            }
+            default: {
+                int band = Math.max(1, (int) (height * MICR_BAND_FRACTION));
+                return new Rect(0, height - band, width, height);
+            }
+        }
+    }
+}
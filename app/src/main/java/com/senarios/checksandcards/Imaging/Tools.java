@@ -26,6 +26,18 @@ public class Tools {
         return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, false);
     }
 
+    /**
+     * Creates an opaque grayscale bitmap from tightly packed 8-bit luma samples.
+     */
+    public static Bitmap grayscaleToBitmap(byte[] luma, int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int gray = luma[i] & 0xFF;
+            pixels[i] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
     public enum ScalingLogic {
         CROP, FIT
     }
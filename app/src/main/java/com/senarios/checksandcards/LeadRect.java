@@ -64,6 +64,21 @@ public class LeadRect
         return new LeadRect(left, top, right - left, bottom - top);
     }
 
+    /**
+     * Maps a rectangle in view coordinates into the coordinates of a frame shown scaled to the
+     * view, clamped to the frame bounds.
+     */
+    public static LeadRect mapToFrame(int left, int top, int right, int bottom, int viewWidth,
+                                      int viewHeight, int frameWidth, int frameHeight)
+    {
+        float ratioX = (float)viewWidth / frameWidth;
+        float ratioY = (float)viewHeight / frameHeight;
+
+        return fromLTRB(Math.max(0, (int)(left / ratioX)), Math.max(0, (int)(top / ratioY)),
+                        Math.min(frameWidth, (int)(right / ratioX)),
+                        Math.min(frameHeight, (int)(bottom / ratioY)));
+    }
+
     private void update()
     {
         this._x = this.left;
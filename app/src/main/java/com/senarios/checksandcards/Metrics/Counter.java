@@ -0,0 +1,43 @@
+package com.senarios.checksandcards.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A monotonic event counter, safe from any thread.
+ */
+public class Counter
+{
+    private final String mName;
+
+    private final AtomicLong mValue = new AtomicLong();
+
+    Counter(String name)
+    {
+        mName = name;
+    }
+
+    public String getName()
+    {
+        return mName;
+    }
+
+    public void increment()
+    {
+        mValue.incrementAndGet();
+    }
+
+    public void add(long delta)
+    {
+        mValue.addAndGet(delta);
+    }
+
+    public long get()
+    {
+        return mValue.get();
+    }
+
+    public void reset()
+    {
+        mValue.set(0);
+    }
+}
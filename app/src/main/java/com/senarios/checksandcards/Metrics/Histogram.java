@@ -0,0 +1,152 @@
+package com.senarios.checksandcards.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with fixed, log-spaced buckets from 10 us to about 10 s, four buckets per
+ * doubling. Recording never allocates and is safe from any thread. Percentiles are reported as
+ * the upper bound of the bucket they fall in, so they overestimate by at most ~19%.
+ */
+public class Histogram
+{
+    private static final long MIN_BOUND_NANOS = 10000L;
+
+    private static final long MAX_BOUND_NANOS = 10000000000L;
+
+    /**
+     * Upper bound of each bucket in nanoseconds; the last bucket is unbounded
+     */
+    private static final long[] BOUNDS = createBounds();
+
+    private final String mName;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BOUNDS.length + 1);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mSum = new AtomicLong();
+
+    private final AtomicLong mMax = new AtomicLong();
+
+    Histogram(String name)
+    {
+        mName = name;
+    }
+
+    private static long[] createBounds()
+    {
+        int size = 0;
+        for (double bound = MIN_BOUND_NANOS; bound < MAX_BOUND_NANOS; bound *= Math.pow(2, 0.25))
+        {
+            size++;
+        }
+        long[] bounds = new long[size];
+        double bound = MIN_BOUND_NANOS;
+        for (int i = 0; i < size; i++)
+        {
+            bounds[i] = (long)bound;
+            bound *= Math.pow(2, 0.25);
+        }
+        return bounds;
+    }
+
+    public String getName()
+    {
+        return mName;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+        int low = 0;
+        int high = BOUNDS.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (BOUNDS[mid] < nanos)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        mCounts.incrementAndGet(low);
+        mCount.incrementAndGet();
+        mSum.addAndGet(nanos);
+        while (true)
+        {
+            long max = mMax.get();
+            if (nanos <= max || mMax.compareAndSet(max, nanos))
+                break;
+        }
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}.
+     *
+     * @param startNanos A start time obtained from {@link MetricsRegistry#now()}.
+     * @return The current time, so that consecutive stages can be chained.
+     */
+    public long recordSince(long startNanos)
+    {
+        long now = MetricsRegistry.now();
+        record(now - startNanos);
+        return now;
+    }
+
+    public long getCount()
+    {
+        return mCount.get();
+    }
+
+    public long getMaxNanos()
+    {
+        return mMax.get();
+    }
+
+    public long getMeanNanos()
+    {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * @param quantile A quantile between 0 and 1, e.g. 0.95.
+     * @return The upper bound of the bucket holding the quantile, capped at the maximum recorded
+     * value, or 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double quantile)
+    {
+        long count = mCount.get();
+        if (count == 0)
+            return 0;
+        long rank = (long)Math.ceil(quantile * count);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        long max = mMax.get();
+        for (int i = 0; i < mCounts.length(); i++)
+        {
+            seen += mCounts.get(i);
+            if (seen >= rank)
+                return i < BOUNDS.length ? Math.min(BOUNDS[i], max) : max;
+        }
+        return max;
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < mCounts.length(); i++)
+        {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+}
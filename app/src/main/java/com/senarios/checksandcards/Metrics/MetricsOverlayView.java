@@ -0,0 +1,86 @@
+package com.senarios.checksandcards.Metrics;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import leadtools.camera.FrameStats;
+
+/**
+ * Debug overlay that shows the per-stage latencies of a {@link MetricsRegistry}, and optionally
+ * the camera {@link FrameStats}, refreshed twice a second while the view is attached.
+ */
+public class MetricsOverlayView
+        extends TextView
+{
+    private static final long REFRESH_INTERVAL_MS = 500;
+
+    private MetricsRegistry mRegistry;
+
+    private FrameStats mFrameStats;
+
+    private final Runnable mRefresh = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            refresh();
+            postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    public MetricsOverlayView(Context context)
+    {
+        this(context, null);
+    }
+
+    public MetricsOverlayView(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0x80000000);
+    }
+
+    public void setRegistry(MetricsRegistry registry)
+    {
+        mRegistry = registry;
+        refresh();
+    }
+
+    public void setFrameStats(FrameStats frameStats)
+    {
+        mFrameStats = frameStats;
+        refresh();
+    }
+
+    @Override
+    protected void onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        post(mRefresh);
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        removeCallbacks(mRefresh);
+        super.onDetachedFromWindow();
+    }
+
+    private void refresh()
+    {
+        if (getVisibility() != VISIBLE)
+            return;
+        StringBuilder sb = new StringBuilder();
+        if (mRegistry != null)
+            sb.append(mRegistry.formatSummary());
+        if (mFrameStats != null)
+            sb.append(mFrameStats);
+        setText(sb);
+    }
+}
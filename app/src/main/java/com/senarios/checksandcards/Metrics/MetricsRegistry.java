@@ -0,0 +1,178 @@
+package com.senarios.checksandcards.Metrics;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Named latency histograms and counters of the scan pipeline.
+ * <p>
+ * Instruments are registered once, typically when the pipeline is set up, and then updated
+ * through the returned references; updating never allocates. Spans are measured with the
+ * monotonic {@link #now()} clock:
+ * <pre>
+ * long start = MetricsRegistry.now();
+ * ...
+ * histogram.recordSince(start);
+ * </pre>
+ * The registry can be dumped to logcat or JSON, with p50/p95/p99 per histogram, from any thread.
+ */
+public class MetricsRegistry
+{
+    private final ArrayList<Histogram> mHistograms = new ArrayList<>();
+
+    private final ArrayList<Counter> mCounters = new ArrayList<>();
+
+    /**
+     * @return The monotonic clock used for spans, in nanoseconds.
+     */
+    public static long now()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Gets the histogram with the given name, registering it on first use.
+     */
+    public synchronized Histogram histogram(String name)
+    {
+        for (Histogram histogram : mHistograms)
+        {
+            if (histogram.getName()
+                         .equals(name))
+                return histogram;
+        }
+        Histogram histogram = new Histogram(name);
+        mHistograms.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Gets the counter with the given name, registering it on first use.
+     */
+    public synchronized Counter counter(String name)
+    {
+        for (Counter counter : mCounters)
+        {
+            if (counter.getName()
+                       .equals(name))
+                return counter;
+        }
+        Counter counter = new Counter(name);
+        mCounters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Clears every histogram and counter.
+     */
+    public synchronized void reset()
+    {
+        for (Histogram histogram : mHistograms)
+        {
+            histogram.reset();
+        }
+        for (Counter counter : mCounters)
+        {
+            counter.reset();
+        }
+    }
+
+    /**
+     * @return One line per instrument, with latencies in milliseconds, e.g. for a debug overlay.
+     */
+    public synchronized String formatSummary()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram histogram : mHistograms)
+        {
+            sb.append(String.format(Locale.US, "%s n=%d p50=%.1f p95=%.1f p99=%.1f max=%.1f ms\n",
+                                    histogram.getName(), histogram.getCount(),
+                                    millis(histogram.getPercentileNanos(0.50)),
+                                    millis(histogram.getPercentileNanos(0.95)),
+                                    millis(histogram.getPercentileNanos(0.99)),
+                                    millis(histogram.getMaxNanos())));
+        }
+        for (Counter counter : mCounters)
+        {
+            sb.append(counter.getName())
+              .append('=')
+              .append(counter.get())
+              .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The instruments as a JSON object, with latencies in microseconds:
+     * {@code {"histograms":{"name":{"count":..,"mean":..,"p50":..,"p95":..,"p99":..,"max":..}},
+     * "counters":{"name":..}}}
+     */
+    public synchronized String toJson()
+    {
+        StringBuilder sb = new StringBuilder("{\"histograms\":{");
+        for (int i = 0; i < mHistograms.size(); i++)
+        {
+            Histogram histogram = mHistograms.get(i);
+            if (i > 0)
+                sb.append(',');
+            appendString(sb, histogram.getName());
+            sb.append(":{\"count\":")
+              .append(histogram.getCount())
+              .append(",\"mean\":")
+              .append(histogram.getMeanNanos() / 1000)
+              .append(",\"p50\":")
+              .append(histogram.getPercentileNanos(0.50) / 1000)
+              .append(",\"p95\":")
+              .append(histogram.getPercentileNanos(0.95) / 1000)
+              .append(",\"p99\":")
+              .append(histogram.getPercentileNanos(0.99) / 1000)
+              .append(",\"max\":")
+              .append(histogram.getMaxNanos() / 1000)
+              .append('}');
+        }
+        sb.append("},\"counters\":{");
+        for (int i = 0; i < mCounters.size(); i++)
+        {
+            Counter counter = mCounters.get(i);
+            if (i > 0)
+                sb.append(',');
+            appendString(sb, counter.getName());
+            sb.append(':')
+              .append(counter.get());
+        }
+        return sb.append("}}")
+                 .toString();
+    }
+
+    /**
+     * Writes {@link #formatSummary()} and {@link #toJson()} to logcat.
+     */
+    public void dumpToLog(String tag)
+    {
+        for (String line : formatSummary().split("\n"))
+        {
+            Log.i(tag, line);
+        }
+        Log.i(tag, toJson());
+    }
+
+    private static double millis(long nanos)
+    {
+        return nanos / 1000000.0;
+    }
+
+    private static void appendString(StringBuilder sb, String value)
+    {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -22,6 +22,10 @@ import leadtools.camera.LeadSize;
 public class OverlayView
         extends View
 {
+    /**
+     * Height of the area searched for the MICR line, in MICR clear bands
+     */
+    private static final float MICR_SEARCH_BANDS = 2;
 
     private Paint mLiveCapturePaint;
     private Paint mLiveCapturePaintMicr;
@@ -125,6 +129,21 @@ public class OverlayView
 
 
     public LeadRect updateArea(int cameraWidth, int cameraHeight, LeadSize surfaceSize, int yuvWidth, int yuvHeight)
+    {
+        return updateArea(cameraWidth, cameraHeight, surfaceSize.getMeasuredWidth(),
+                          surfaceSize.getMeasuredHeight(), yuvWidth, yuvHeight);
+    }
+
+    /**
+     * Updates the guide and MICR areas for the given camera view size and maps the MICR search
+     * area into frame coordinates, clamped to the frame bounds. The search area covers twice the
+     * height of the MICR clear band, so that the line is still found when the cheque sits a little
+     * high in the guide.
+     *
+     * @return The MICR search area in the coordinates of a {@code yuvWidth} x {@code yuvHeight}
+     * frame
+     */
+    public LeadRect updateArea(int cameraWidth, int cameraHeight, int measuredWidth, int measuredHeight, int yuvWidth, int yuvHeight)
     {
         // Update the area
         float horizontalMargins = cameraWidth / 15;
@@ -162,13 +181,9 @@ public class OverlayView
         mMicrNoteBounds = new RectF(mLiveCaptureRect.left, mMicrNoteTop - mTextPaint.getTextSize(),
                                     mLiveCaptureRect.right, mLiveCaptureRect.top - 10);
 
-        float ratioX = (float)surfaceSize.getMeasuredWidth() / yuvWidth;
-        float ratioY = (float)surfaceSize.getMeasuredHeight() / yuvHeight;
-
-        return LeadRect.fromLTRB(
-                (int)(mMicrAreaBounds.left / ratioX),
-                (int)(mMicrAreaBounds.top / ratioY),
-                (int)(mMicrAreaBounds.right / ratioX),
-                (int)(mMicrAreaBounds.bottom / ratioY));
+        int searchTop = (int)(mMicrAreaBounds.bottom - mMicrClearBandHeight * MICR_SEARCH_BANDS);
+        return LeadRect.mapToFrame(mMicrAreaBounds.left, Math.max(searchTop, mLiveCaptureRect.top),
+                                   mMicrAreaBounds.right, mMicrAreaBounds.bottom, measuredWidth,
+                                   measuredHeight, yuvWidth, yuvHeight);
     }
 }
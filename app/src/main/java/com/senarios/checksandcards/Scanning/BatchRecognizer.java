@@ -0,0 +1,487 @@
+package com.senarios.checksandcards.Scanning;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.ReadFile;
+import com.senarios.checksandcards.Imaging.MicrBandLoader;
+import com.senarios.checksandcards.Metrics.Histogram;
+import com.senarios.checksandcards.Metrics.MetricsRegistry;
+import com.senarios.checksandcards.TessTool.ResultClass;
+import com.senarios.checksandcards.TessTool.TessEngine;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Recognizes the MICR line of still cheque images, e.g. a folder of scans, on a pool of worker
+ * threads.
+ * <p>
+ * Each worker owns one {@link TessEngine} and takes the next file, decodes its MICR band at OCR
+ * resolution through {@link MicrBandLoader}, copies the luma out of the band and releases the
+ * bitmap before locating the line, recognizing and parsing it. Files are taken one at a time, so
+ * a batch of any size only holds the bitmaps currently being decoded, and at most
+ * {@code maxDecodedBitmaps} of them at once.
+ */
+public class BatchRecognizer
+{
+    private static final String TAG = "DBG_" + BatchRecognizer.class.getName();
+
+    /**
+     * Width the MICR band is decoded at, enough for the characters of a full cheque
+     */
+    public static final int DEFAULT_DECODE_WIDTH = 1600;
+
+    /**
+     * Outcome of one image, reported in completion order.
+     */
+    public static final class Item
+    {
+        /**
+         * Position of the file in the batch
+         */
+        public final int index;
+
+        public final File file;
+
+        /**
+         * Recognized text as returned by the engine, or {@code null} if the image could not be
+         * decoded or recognized
+         */
+        public final String text;
+
+        /**
+         * The parsed line without whitespace, empty if nothing was read
+         */
+        public final String line;
+
+        public final String routing;
+
+        public final String account;
+
+        public final String cheque;
+
+        /**
+         * Whether the line is well formed and its routing number passes the checksum
+         */
+        public final boolean valid;
+
+        Item(int index, File file, String text, MicrLineParser.Result parsed, boolean valid)
+        {
+            this.index = index;
+            this.file = file;
+            this.text = text;
+            this.line = parsed.line.toString();
+            this.routing = parsed.routing.toString();
+            this.account = parsed.account.toString();
+            this.cheque = parsed.cheque.toString();
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * Totals of a finished or cancelled batch.
+     */
+    public static final class Summary
+    {
+        public final int total;
+
+        public final int completed;
+
+        /**
+         * Images whose line parsed and passed the routing checksum
+         */
+        public final int valid;
+
+        /**
+         * Images that could not be decoded or recognized
+         */
+        public final int failed;
+
+        public final long elapsedNanos;
+
+        public final boolean cancelled;
+
+        Summary(int total, int completed, int valid, int failed, long elapsedNanos,
+                boolean cancelled)
+        {
+            this.total = total;
+            this.completed = completed;
+            this.valid = valid;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.cancelled = cancelled;
+        }
+
+        public double getImagesPerSecond()
+        {
+            return elapsedNanos == 0 ? 0 : completed * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "%d/%d images, %d valid, %d failed, %.2f images/s%s",
+                                 completed, total, valid, failed, getImagesPerSecond(),
+                                 cancelled ? ", cancelled" : "");
+        }
+    }
+
+    /**
+     * Receives progress on the main thread.
+     */
+    public interface Listener
+    {
+        void onItem(Item item, int completed, int total);
+
+        void onFinished(Summary summary);
+    }
+
+    private final Object mLock = new Object();
+
+    private final TessEngine[] mEngines;
+
+    private final Semaphore mDecodePermits;
+
+    private final Listener mListener;
+
+    private final Histogram mDecodeTime;
+
+    private final Histogram mOcrTime;
+
+    private final Histogram mImageTime;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private int mDecodeWidth = DEFAULT_DECODE_WIDTH;
+
+    private List<File> mFiles;
+
+    private Thread[] mWorkers;
+
+    private boolean mRunning;
+
+    private boolean mCancelled;
+
+    private int mNextIndex;
+
+    private int mCompleted;
+
+    private int mValid;
+
+    private int mFailed;
+
+    private int mActiveWorkers;
+
+    private long mStartNanos;
+
+    public BatchRecognizer(TessEngine[] engines, int maxDecodedBitmaps, Listener listener)
+    {
+        this(engines, maxDecodedBitmaps, listener, new MetricsRegistry());
+    }
+
+    /**
+     * @param engines           One engine per worker thread, used exclusively by the recognizer
+     *                          while a batch runs.
+     * @param maxDecodedBitmaps The most decoded bitmaps held in memory at once.
+     * @param listener          Receives progress on the main thread.
+     * @param registry          Receives the decode, recognition and per-image times.
+     */
+    public BatchRecognizer(TessEngine[] engines, int maxDecodedBitmaps, Listener listener,
+                           MetricsRegistry registry)
+    {
+        if (engines.length == 0)
+            throw new IllegalArgumentException("At least one engine is required");
+        if (maxDecodedBitmaps < 1)
+            throw new IllegalArgumentException("At least one decoded bitmap must be allowed");
+        mEngines = engines.clone();
+        mDecodePermits = new Semaphore(maxDecodedBitmaps, true);
+        mListener = listener;
+        mDecodeTime = registry.histogram("batch_decode");
+        mOcrTime = registry.histogram("batch_ocr");
+        mImageTime = registry.histogram("batch_image");
+    }
+
+    /**
+     * Lists the images of a folder, sorted by name.
+     */
+    public static List<File> listImages(File folder)
+    {
+        File[] files = folder.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File file)
+            {
+                String name = file.getName()
+                                  .toLowerCase(Locale.US);
+                return file.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg") ||
+                                         name.endsWith(".png") || name.endsWith(".webp"));
+            }
+        });
+        if (files == null)
+            return new ArrayList<>();
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Sets the width the MICR band is decoded at. Takes effect for the next batch.
+     */
+    public void setDecodeWidth(int decodeWidth)
+    {
+        synchronized (mLock)
+        {
+            mDecodeWidth = decodeWidth;
+        }
+    }
+
+    /**
+     * Starts recognizing {@code files}. Progress and the final summary are reported to the
+     * listener; a batch with no files finishes immediately.
+     *
+     * @throws IllegalStateException If a batch is already running.
+     */
+    public void start(List<File> files)
+    {
+        synchronized (mLock)
+        {
+            if (mRunning)
+                throw new IllegalStateException("A batch is already running");
+            mRunning = true;
+            mCancelled = false;
+            mFiles = new ArrayList<>(files);
+            mNextIndex = 0;
+            mCompleted = 0;
+            mValid = 0;
+            mFailed = 0;
+            mStartNanos = MetricsRegistry.now();
+            final int decodeWidth = mDecodeWidth;
+            int workerCount = Math.min(mEngines.length, Math.max(1, mFiles.size()));
+            mActiveWorkers = workerCount;
+            mWorkers = new Thread[workerCount];
+            for (int i = 0; i < workerCount; i++)
+            {
+                final TessEngine engine = mEngines[i];
+                mWorkers[i] = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        try
+                        {
+                            engine.init();
+                            runWorker(engine, decodeWidth);
+                        }
+                        finally
+                        {
+                            onWorkerExit();
+                        }
+                    }
+                }, "MicrBatch-" + i);
+                mWorkers[i].start();
+            }
+        }
+    }
+
+    /**
+     * Stops taking new files. Images in progress complete and the summary is still reported,
+     * marked as cancelled.
+     */
+    public void cancel()
+    {
+        Thread[] workers;
+        synchronized (mLock)
+        {
+            if (!mRunning)
+                return;
+            mCancelled = true;
+            workers = mWorkers;
+        }
+        for (Thread worker : workers)
+        {
+            worker.interrupt();
+        }
+    }
+
+    public boolean isRunning()
+    {
+        synchronized (mLock)
+        {
+            return mRunning;
+        }
+    }
+
+    private void runWorker(TessEngine engine, int decodeWidth)
+    {
+        MicrLineParser parser = new MicrLineParser();
+        MicrLineParser.Result parsed = new MicrLineParser.Result();
+        MicrBandLocator locator = new MicrBandLocator();
+        MicrBandLocator.Band band = new MicrBandLocator.Band();
+        int[] row = new int[0];
+        while (true)
+        {
+            int index;
+            File file;
+            synchronized (mLock)
+            {
+                if (mCancelled || mNextIndex >= mFiles.size())
+                    return;
+                index = mNextIndex++;
+                file = mFiles.get(index);
+            }
+
+            long start = MetricsRegistry.now();
+            byte[] luma;
+            int width;
+            int height;
+            try
+            {
+                mDecodePermits.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            try
+            {
+                Bitmap bitmap = MicrBandLoader.decodeBand(file.getPath(), 0, decodeWidth);
+                if (bitmap == null)
+                {
+                    Log.e(TAG, "Error decoding " + file);
+                    luma = null;
+                    width = 0;
+                    height = 0;
+                }
+                else
+                {
+                    width = bitmap.getWidth();
+                    height = bitmap.getHeight();
+                    luma = new byte[width * height];
+                    if (row.length < width)
+                        row = new int[width];
+                    extractLuma(bitmap, row, luma);
+                    bitmap.recycle();
+                }
+            }
+            finally
+            {
+                mDecodePermits.release();
+            }
+            long ocrStart = mDecodeTime.recordSince(start);
+
+            // Still images get a single pass, so the whole band is read when no line stands out
+            if (luma != null && locator.locate(luma, width, height, band))
+            {
+                luma = MicrBandLocator.crop(luma, width, band);
+                width = band.getWidth();
+                height = band.getHeight();
+            }
+            String text = luma == null ? null : recognize(engine, luma, width, height);
+            mOcrTime.recordSince(ocrStart);
+            boolean valid = text != null && parser.parse(text, parsed);
+            if (text == null)
+                parsed.reset();
+            mImageTime.recordSince(start);
+            report(new Item(index, file, text, parsed, valid));
+        }
+    }
+
+    private static void extractLuma(Bitmap bitmap, int[] row, byte[] luma)
+    {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        for (int y = 0; y < height; y++)
+        {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            int offset = y * width;
+            for (int x = 0; x < width; x++)
+            {
+                int c = row[x];
+                luma[offset + x] = (byte)((Color.red(c) * 77 + Color.green(c) * 150 +
+                                           Color.blue(c) * 29) >> 8);
+            }
+        }
+    }
+
+    private static String recognize(TessEngine engine, byte[] luma, int width, int height)
+    {
+        try
+        {
+            Pix pix = ReadFile.readBytes8(luma, width, height);
+            if (pix == null)
+            {
+                Log.e(TAG, "Error creating pix from MICR luma");
+                return null;
+            }
+            ResultClass result = engine.detectText(pix);
+            pix.recycle();
+            if (result == null)
+                return null;
+            result.recycle();
+            return result.rzlt;
+        }
+        catch (Exception ex)
+        {
+            Log.d(TAG, "Error: " + ex + "\n" + ex.getMessage());
+        }
+        return null;
+    }
+
+    private void report(final Item item)
+    {
+        final int completed;
+        final int total;
+        synchronized (mLock)
+        {
+            completed = ++mCompleted;
+            total = mFiles.size();
+            if (item.valid)
+                mValid++;
+            if (item.text == null)
+                mFailed++;
+        }
+        mMainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mListener.onItem(item, completed, total);
+            }
+        });
+    }
+
+    private void onWorkerExit()
+    {
+        final Summary summary;
+        synchronized (mLock)
+        {
+            if (--mActiveWorkers > 0)
+                return;
+            summary = new Summary(mFiles.size(), mCompleted, mValid, mFailed,
+                                  MetricsRegistry.now() - mStartNanos, mCancelled);
+            mRunning = false;
+            mWorkers = null;
+            mFiles = null;
+        }
+        Log.i(TAG, "Batch finished: " + summary);
+        mMainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mListener.onFinished(summary);
+            }
+        });
+    }
+}
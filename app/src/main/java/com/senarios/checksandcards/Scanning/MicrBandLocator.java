@@ -0,0 +1,210 @@
+package com.senarios.checksandcards.Scanning;
+
+import java.util.Arrays;
+
+/**
+ * Finds the MICR text line in a luma image of the bottom of the cheque, using projection
+ * profiles of the horizontal gradient.
+ * <p>
+ * Printed characters produce many strong horizontal transitions, while blank paper, shadows and
+ * the smooth edges of the cheque produce few. The rows whose gradient energy stands out from the
+ * median row form the line; the columns with energy within those rows give its extent. Gradients
+ * are taken between every other pixel, so a 1100 x 200 search area takes well under a
+ * millisecond.
+ * <p>
+ * A locator reuses its profile buffers and is not safe for use from several threads.
+ */
+public class MicrBandLocator
+{
+    /**
+     * Smallest mean gradient, per sampled pixel, of the strongest row for it to count as text
+     */
+    private static final int MIN_PEAK_ENERGY = 6;
+
+    /**
+     * Rows and columns belong to the line while their energy stays above this share of the way
+     * from the background to the peak
+     */
+    private static final float EDGE_RATIO = 0.3f;
+
+    /**
+     * Margin added around the line, as a share of its height, so that Tesseract sees some paper
+     */
+    private static final float MARGIN_RATIO = 0.35f;
+
+    private static final int MIN_LINE_HEIGHT = 4;
+
+    /**
+     * A located line. Coordinates are in pixels of the searched image; right and bottom are
+     * exclusive.
+     */
+    public static final class Band
+    {
+        public int left;
+
+        public int top;
+
+        public int right;
+
+        public int bottom;
+
+        public int getWidth()
+        {
+            return right - left;
+        }
+
+        public int getHeight()
+        {
+            return bottom - top;
+        }
+    }
+
+    private int[] mRows = new int[0];
+
+    private int[] mColumns = new int[0];
+
+    private int[] mSorted = new int[0];
+
+    /**
+     * Locates the MICR line in {@code luma}.
+     *
+     * @param luma Tightly packed 8-bit luma, {@code width} x {@code height}.
+     * @param band Receives the line, with a margin, when one is found.
+     * @return {@code false} if no row stands out as text, e.g. the band shows blank paper.
+     */
+    public boolean locate(byte[] luma, int width, int height, Band band)
+    {
+        if (width < 3 || height < MIN_LINE_HEIGHT)
+            return false;
+        int samplesPerRow = (width - 1) / 2;
+
+        // Row profile
+        int[] rows = ensure(mRows, height);
+        mRows = rows;
+        for (int y = 0; y < height; y++)
+        {
+            int offset = y * width;
+            int energy = 0;
+            for (int x = 0; x < width - 2; x += 2)
+            {
+                int d = (luma[offset + x] & 0xFF) - (luma[offset + x + 2] & 0xFF);
+                energy += d < 0 ? -d : d;
+            }
+            rows[y] = energy;
+        }
+        smooth(rows, height);
+
+        int peak = 0;
+        for (int y = 1; y < height; y++)
+        {
+            if (rows[y] > rows[peak])
+                peak = y;
+        }
+        if (rows[peak] < MIN_PEAK_ENERGY * samplesPerRow)
+            return false;
+        int background = median(rows, height);
+        int threshold = background + (int)((rows[peak] - background) * EDGE_RATIO);
+        int top = peak;
+        while (top > 0 && rows[top - 1] > threshold)
+        {
+            top--;
+        }
+        int bottom = peak + 1;
+        while (bottom < height && rows[bottom] > threshold)
+        {
+            bottom++;
+        }
+        int lineHeight = bottom - top;
+        if (lineHeight < MIN_LINE_HEIGHT)
+            return false;
+
+        // Column profile within the line
+        int[] columns = ensure(mColumns, width);
+        mColumns = columns;
+        for (int x = 0; x < width; x++)
+        {
+            columns[x] = 0;
+        }
+        for (int y = top; y < bottom; y++)
+        {
+            int offset = y * width;
+            for (int x = 0; x < width - 2; x += 2)
+            {
+                int d = (luma[offset + x] & 0xFF) - (luma[offset + x + 2] & 0xFF);
+                columns[x] += d < 0 ? -d : d;
+            }
+        }
+        // Columns are judged over a window about a character wide, so that the gaps between
+        // characters do not split the line; a window counts as text at half the row minimum
+        int windowSamples = Math.max(1, lineHeight / 2);
+        int columnThreshold = MIN_PEAK_ENERGY * lineHeight * windowSamples / 2;
+        int left = -1;
+        int right = -1;
+        int run = 0;
+        for (int x = 0, i = 0; x < width - 2; x += 2, i++)
+        {
+            run += columns[x];
+            if (i >= windowSamples)
+                run -= columns[x - 2 * windowSamples];
+            if (run >= columnThreshold)
+            {
+                if (left < 0)
+                    left = Math.max(0, x - 2 * (windowSamples - 1));
+                right = x + 2;
+            }
+        }
+        if (left < 0)
+            return false;
+
+        int margin = Math.max(2, (int)(lineHeight * MARGIN_RATIO));
+        band.top = Math.max(0, top - margin);
+        band.bottom = Math.min(height, bottom + margin);
+        band.left = Math.max(0, left - margin);
+        band.right = Math.min(width, right + margin);
+        return true;
+    }
+
+    /**
+     * Copies the located band out of {@code luma} into a new tightly packed array.
+     */
+    public static byte[] crop(byte[] luma, int width, Band band)
+    {
+        int bandWidth = band.getWidth();
+        byte[] out = new byte[bandWidth * band.getHeight()];
+        for (int y = band.top; y < band.bottom; y++)
+        {
+            System.arraycopy(luma, y * width + band.left, out, (y - band.top) * bandWidth,
+                             bandWidth);
+        }
+        return out;
+    }
+
+    private static int[] ensure(int[] buffer, int size)
+    {
+        return buffer.length >= size ? buffer : new int[size];
+    }
+
+    /**
+     * Three-tap box filter in place, so that a single noisy row neither starts nor splits a line.
+     */
+    private static void smooth(int[] values, int size)
+    {
+        int previous = values[0];
+        for (int i = 0; i < size; i++)
+        {
+            int current = values[i];
+            int next = i + 1 < size ? values[i + 1] : current;
+            values[i] = (previous + current + next) / 3;
+            previous = current;
+        }
+    }
+
+    private int median(int[] values, int size)
+    {
+        int[] sorted = ensure(mSorted, size);
+        mSorted = sorted;
+        System.arraycopy(values, 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        return sorted[size / 2];
+    }
+}
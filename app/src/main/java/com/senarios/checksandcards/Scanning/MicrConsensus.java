@@ -0,0 +1,129 @@
+package com.senarios.checksandcards.Scanning;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Accumulates MICR reads of consecutive frames and accepts a line once enough frames agree on it,
+ * character by character.
+ * <p>
+ * Reads are aligned by position: only reads of the same length as the newest read vote, which
+ * matches how E-13B misreads usually show up (a wrong glyph rather than a shifted line). For every
+ * position the most frequent character wins, and a line is accepted when the winner of every
+ * position has at least {@code threshold} votes among the last {@code window} reads. A single
+ * noisy frame therefore cannot produce a result, and a wrong character in one frame is outvoted by
+ * the others.
+ * <p>
+ * This class is not thread-safe; use it from the thread that receives recognition results.
+ */
+public class MicrConsensus
+{
+    private final int mThreshold;
+
+    private final int mWindow;
+
+    private final ArrayDeque<String> mReads;
+
+    /**
+     * Vote counts of a single position, indexed by character
+     */
+    private final int[] mVotes = new int[128];
+
+    private float[] mConfidence = new float[0];
+
+    /**
+     * @param threshold The number of agreeing reads required for every character.
+     * @param window    The number of most recent reads that take part in the vote.
+     */
+    public MicrConsensus(int threshold, int window)
+    {
+        if (threshold < 1 || window < threshold)
+            throw new IllegalArgumentException(
+                    "Invalid threshold " + threshold + " for window " + window);
+        mThreshold = threshold;
+        mWindow = window;
+        mReads = new ArrayDeque<>(window);
+    }
+
+    /**
+     * Adds the read of a frame and votes over the reads of the current window.
+     *
+     * @param read The recognized line, without whitespace.
+     * @return The agreed line, or {@code null} while the reads do not agree yet.
+     */
+    public String offer(CharSequence read)
+    {
+        String line = read.toString();
+        if (mReads.size() == mWindow)
+            mReads.removeFirst();
+        mReads.addLast(line);
+
+        int length = line.length();
+        if (mConfidence.length != length)
+            mConfidence = new float[length];
+
+        char[] agreed = new char[length];
+        boolean accepted = length > 0;
+        for (int position = 0; position < length; position++)
+        {
+            int total = 0;
+            int best = 0;
+            char winner = 0;
+            Iterator<String> it = mReads.descendingIterator();
+            while (it.hasNext())
+            {
+                String other = it.next();
+                if (other.length() != length)
+                    continue;
+                char c = other.charAt(position);
+                if (c >= mVotes.length)
+                    continue;
+                total++;
+                int votes = ++mVotes[c];
+                if (votes > best)
+                {
+                    best = votes;
+                    winner = c;
+                }
+            }
+            for (String other : mReads)
+            {
+                if (other.length() == length && other.charAt(position) < mVotes.length)
+                    mVotes[other.charAt(position)] = 0;
+            }
+
+            agreed[position] = winner;
+            mConfidence[position] = total == 0 ? 0 : (float)best / total;
+            if (best < mThreshold)
+                accepted = false;
+        }
+        return accepted ? new String(agreed) : null;
+    }
+
+    /**
+     * @param position A character position of the last read.
+     * @return The share of aligned reads that voted for the winning character at
+     * {@code position} in the last {@link #offer(CharSequence)}, between 0 and 1.
+     */
+    public float getConfidence(int position)
+    {
+        return mConfidence[position];
+    }
+
+    /**
+     * @return The number of reads currently taking part in the vote.
+     */
+    public int getReadCount()
+    {
+        return mReads.size();
+    }
+
+    /**
+     * Forgets every read, e.g. when a different cheque is framed.
+     */
+    public void reset()
+    {
+        mReads.clear();
+        mConfidence = new float[0];
+    }
+}
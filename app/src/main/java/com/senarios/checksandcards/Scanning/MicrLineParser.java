@@ -0,0 +1,226 @@
+package com.senarios.checksandcards.Scanning;
+
+/**
+ * Parses an E-13B MICR line as recognized by the {@code mcr} trained data, in a single pass and
+ * without allocating once the {@link Result} buffers have grown to the line length.
+ * <p>
+ * The E-13B symbols are recognized as letters: {@link #TRANSIT} ({@code A}) delimits the routing
+ * number, {@link #ON_US} ({@code C}) delimits the on-us fields and {@link #DASH} ({@code D})
+ * separates groups of an account number. Whitespace is ignored. The line is read as
+ * <pre>
+ * [C cheque C] [A] routing A account C [cheque | transaction code]
+ * </pre>
+ * where the cheque number is either the auxiliary on-us field before the routing number or the
+ * digits following the account. When the cheque number came first, the digits following the
+ * account are a transaction code. A line is valid when the routing number has nine digits that
+ * pass the ABA checksum and an account number is present.
+ * <p>
+ * Amounts are not recognized: the engine's whitelist leaves out the amount symbol ({@code B}),
+ * which is only printed once a cheque has been processed. A line containing it is rejected like
+ * any other unexpected symbol.
+ */
+public class MicrLineParser
+{
+    public static final char TRANSIT = 'A';
+
+    public static final char ON_US = 'C';
+
+    public static final char DASH = 'D';
+
+    private static final int ROUTING_LENGTH = 9;
+
+    private static final int BEFORE_ROUTING = 0;
+
+    private static final int AFTER_ROUTING = 1;
+
+    /**
+     * Fields of a parsed line. The buffers are reused by every {@link #parse} call; copy them with
+     * {@code toString()} to keep them.
+     */
+    public static final class Result
+    {
+        /**
+         * The line without whitespace, e.g. for {@link MicrConsensus}
+         */
+        public final StringBuilder line = new StringBuilder(64);
+
+        public final StringBuilder routing = new StringBuilder(ROUTING_LENGTH);
+
+        /**
+         * Account number, with {@code -} for dash symbols
+         */
+        public final StringBuilder account = new StringBuilder(24);
+
+        public final StringBuilder cheque = new StringBuilder(16);
+
+        /**
+         * Digits after the account when the cheque number is already known, e.g. a transaction
+         * code
+         */
+        public final StringBuilder transactionCode = new StringBuilder(8);
+
+        void reset()
+        {
+            line.setLength(0);
+            routing.setLength(0);
+            account.setLength(0);
+            cheque.setLength(0);
+            transactionCode.setLength(0);
+        }
+    }
+
+    private final StringBuilder mPending = new StringBuilder(32);
+
+    /**
+     * Parses {@code text} into {@code result}.
+     *
+     * @return {@code true} if the line is well formed and its routing number passes the ABA
+     * checksum. {@code result} holds whatever was read even when this returns {@code false}.
+     */
+    public boolean parse(CharSequence text, Result result)
+    {
+        result.reset();
+        StringBuilder pending = mPending;
+        pending.setLength(0);
+        int state = BEFORE_ROUTING;
+        boolean pendingDash = false;
+
+        for (int i = 0, n = text.length(); i < n; i++)
+        {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c))
+                continue;
+            result.line.append(c);
+
+            if (c >= '0' && c <= '9')
+            {
+                if (pendingDash)
+                {
+                    pending.append('-');
+                    pendingDash = false;
+                }
+                pending.append(c);
+                continue;
+            }
+
+            switch (c)
+            {
+                case DASH:
+                    // Only meaningful between digits of the account number
+                    if (state != AFTER_ROUTING || pending.length() == 0)
+                        return false;
+                    pendingDash = true;
+                    break;
+
+                case TRANSIT:
+                    if (state == BEFORE_ROUTING)
+                    {
+                        // An opening transit symbol has no digits before it
+                        if (pending.length() > 0)
+                        {
+                            result.routing.append(pending);
+                            pending.setLength(0);
+                            state = AFTER_ROUTING;
+                        }
+                    }
+                    else if (state != AFTER_ROUTING || pending.length() > 0 ||
+                            result.account.length() > 0)
+                    {
+                        return false;
+                    }
+                    break;
+
+                case ON_US:
+                    if (pending.length() > 0)
+                    {
+                        if (state == AFTER_ROUTING)
+                        {
+                            if (!assignAfterRouting(result))
+                                return false;
+                        }
+                        else if (result.cheque.length() == 0)
+                        {
+                            result.cheque.append(pending);
+                        }
+                        else
+                        {
+                            return false;
+                        }
+                        pending.setLength(0);
+                    }
+                    pendingDash = false;
+                    break;
+
+                default:
+                    return false;
+            }
+        }
+
+        if (!flushTrailing(state, result))
+            return false;
+        return result.account.length() > 0 && isValidRouting(result.routing);
+    }
+
+    /**
+     * Assigns digits that are not followed by a delimiter.
+     */
+    private boolean flushTrailing(int state, Result result)
+    {
+        if (mPending.length() == 0)
+            return true;
+        if (state != AFTER_ROUTING || !assignAfterRouting(result))
+            return false;
+        mPending.setLength(0);
+        return true;
+    }
+
+    /**
+     * Assigns the pending digits of a field after the routing number to the account, then the
+     * cheque number, then the transaction code.
+     *
+     * @return {@code false} if every field is already filled.
+     */
+    private boolean assignAfterRouting(Result result)
+    {
+        if (result.account.length() == 0)
+            result.account.append(mPending);
+        else if (result.cheque.length() == 0)
+            result.cheque.append(mPending);
+        else if (result.transactionCode.length() == 0)
+            result.transactionCode.append(mPending);
+        else
+            return false;
+        return true;
+    }
+
+    /**
+     * Checks the length and ABA check digit of a routing number:
+     * {@code 3(d1 + d4 + d7) + 7(d2 + d5 + d8) + (d3 + d6 + d9)} must be a multiple of 10.
+     */
+    public static boolean isValidRouting(CharSequence routing)
+    {
+        if (routing.length() != ROUTING_LENGTH)
+            return false;
+        int sum = 0;
+        for (int i = 0; i < ROUTING_LENGTH; i++)
+        {
+            char c = routing.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+            int digit = c - '0';
+            switch (i % 3)
+            {
+                case 0:
+                    sum += 3 * digit;
+                    break;
+                case 1:
+                    sum += 7 * digit;
+                    break;
+                default:
+                    sum += digit;
+                    break;
+            }
+        }
+        return sum % 10 == 0;
+    }
+}
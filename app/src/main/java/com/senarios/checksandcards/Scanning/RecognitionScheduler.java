@@ -0,0 +1,493 @@
+package com.senarios.checksandcards.Scanning;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.ReadFile;
+import com.senarios.checksandcards.LeadRect;
+import com.senarios.checksandcards.Metrics.MetricsRegistry;
+import com.senarios.checksandcards.TessTool.ResultClass;
+import com.senarios.checksandcards.TessTool.TessEngine;
+
+import java.util.HashMap;
+
+import leadtools.camera.LeadFrame;
+import leadtools.camera.PreviewGovernor;
+import leadtools.camera.YuvConverter;
+
+/**
+ * Runs MICR recognition on a pool of worker threads, fed through a single-slot mailbox where the
+ * latest frame wins.
+ * <p>
+ * The camera thread only retains the frame and stores it in the slot, replacing (and releasing)
+ * any frame no worker has picked up yet. The luma of the search area is copied out of the frame
+ * only when a worker takes it, so frames that are dropped are never converted. The worker then
+ * locates the MICR line in it with a {@link MicrBandLocator} and recognizes only that crop;
+ * frames where no line stands out are not recognized at all.
+ * <p>
+ * Each worker owns one {@link TessEngine}, so several frames are recognized in parallel. Frames
+ * are numbered when they are picked up and results are delivered in that order, regardless of
+ * which worker finishes first.
+ */
+public class RecognitionScheduler
+{
+    private static final String TAG = "DBG_" + RecognitionScheduler.class.getName();
+
+    /**
+     * A recognized MICR band.
+     */
+    public static final class Result
+    {
+        /**
+         * Recognized text as returned by the engine, including whitespace
+         */
+        public final String text;
+
+        /**
+         * Tightly packed luma of the recognized band, as located in the search area
+         */
+        public final byte[] luma;
+
+        public final int width;
+
+        public final int height;
+
+        /**
+         * Pickup order of the frame; results are delivered in increasing order
+         */
+        public final long sequence;
+
+        /**
+         * {@link MetricsRegistry#now()} when the frame was posted
+         */
+        public final long postedNanos;
+
+        Result(long sequence, long postedNanos, String text, byte[] luma, int width, int height)
+        {
+            this.sequence = sequence;
+            this.postedNanos = postedNanos;
+            this.text = text;
+            this.luma = luma;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Receives recognition results on the main thread.
+     */
+    public interface Listener
+    {
+        void onRecognized(Result result);
+    }
+
+    /**
+     * Placeholder for frames that did not produce a result, so that later results are not held
+     * back waiting for them
+     */
+    private static final Result NO_RESULT = new Result(-1, 0, null, null, 0, 0);
+
+    private final Object mLock = new Object();
+
+    private final TessEngine[] mEngines;
+
+    private final Listener mListener;
+
+    private final ScanMetrics mMetrics;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private LeadFrame mPendingFrame;
+
+    private LeadRect mPendingBounds;
+
+    private long mPendingPostedNanos;
+
+    /**
+     * Results that completed ahead of an earlier frame, keyed by sequence
+     */
+    private final HashMap<Long, Result> mReorderBuffer = new HashMap<>();
+
+    private long mNextSequence;
+
+    private long mNextDelivery;
+
+    /**
+     * Incremented on every start and shutdown so that workers of an earlier run exit
+     */
+    private int mRunId;
+
+    private boolean mRunning;
+
+    private long mPostedFrames;
+
+    private long mDroppedFrames;
+
+    /**
+     * Incremented by {@link #clear()} so that results of older frames are discarded
+     */
+    private int mGeneration;
+
+    private Thread[] mWorkers;
+
+    private volatile PreviewGovernor mPreviewGovernor;
+
+    public RecognitionScheduler(TessEngine engine, Listener listener)
+    {
+        this(new TessEngine[]{engine}, listener);
+    }
+
+    public RecognitionScheduler(TessEngine[] engines, Listener listener)
+    {
+        this(engines, listener, new ScanMetrics(new MetricsRegistry()));
+    }
+
+    /**
+     * @param engines  One engine per worker thread. The engines are used exclusively by the
+     *                 scheduler while it is running.
+     * @param listener Receives results on the main thread.
+     * @param metrics  Records the queue, extraction and recognition times of every frame.
+     */
+    public RecognitionScheduler(TessEngine[] engines, Listener listener, ScanMetrics metrics)
+    {
+        if (engines.length == 0)
+            throw new IllegalArgumentException("At least one engine is required");
+        mEngines = engines.clone();
+        mListener = listener;
+        mMetrics = metrics;
+    }
+
+    /**
+     * @return The default number of workers: half of the available cores, at least one.
+     */
+    public static int defaultWorkerCount()
+    {
+        return Math.max(1, Runtime.getRuntime()
+                                  .availableProcessors() / 2);
+    }
+
+    /**
+     * @return The number of worker threads, one per engine.
+     */
+    public int getWorkerCount()
+    {
+        return mEngines.length;
+    }
+
+    /**
+     * Reports offered, dropped and processed frames to {@code governor}, so that the camera can
+     * slow down when the workers cannot keep up. The governor's parallelism is set to the number
+     * of workers.
+     *
+     * @param governor The governor, or {@code null} to stop reporting.
+     */
+    public void setPreviewGovernor(PreviewGovernor governor)
+    {
+        if (governor != null)
+            governor.setParallelism(mEngines.length);
+        mPreviewGovernor = governor;
+    }
+
+    /**
+     * Starts the worker threads. Each worker initializes its engine before taking frames, or waits
+     * for an initialization already in progress, e.g. by a {@link StartupOrchestrator}.
+     */
+    public void start()
+    {
+        synchronized (mLock)
+        {
+            if (mRunning)
+                return;
+            mRunning = true;
+            final int runId = ++mRunId;
+            mWorkers = new Thread[mEngines.length];
+            for (int i = 0; i < mEngines.length; i++)
+            {
+                final TessEngine engine = mEngines[i];
+                mWorkers[i] = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // Initialized at the default priority, as the first recognition waits
+                        // for it
+                        engine.init();
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runWorker(engine, runId);
+                    }
+                }, "MicrRecognition-" + i);
+                mWorkers[i].start();
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads and releases the pending frame. Recognitions already in progress
+     * complete, but their results are not delivered.
+     */
+    public void shutdown()
+    {
+        Thread[] workers;
+        synchronized (mLock)
+        {
+            mRunning = false;
+            mRunId++;
+            releasePendingLocked();
+            resetOrderLocked();
+            workers = mWorkers;
+            mWorkers = null;
+            mLock.notifyAll();
+        }
+        if (workers != null)
+        {
+            for (Thread worker : workers)
+            {
+                worker.interrupt();
+            }
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Offers a frame for recognition. The frame is retained until the worker has copied the band
+     * out of it, or until a newer frame replaces it.
+     *
+     * @param frame  The preview frame.
+     * @param bounds The area to search for the MICR line, in frame coordinates.
+     * @return {@code false} if the scheduler is not running and the frame was ignored.
+     */
+    public boolean post(LeadFrame frame, LeadRect bounds)
+    {
+        synchronized (mLock)
+        {
+            if (!mRunning)
+                return false;
+            frame.retain();
+            PreviewGovernor governor = mPreviewGovernor;
+            if (governor != null)
+                governor.onFrameOffered();
+            if (mPendingFrame != null)
+            {
+                mPendingFrame.release();
+                mDroppedFrames++;
+                mMetrics.framesDropped.increment();
+                if (governor != null)
+                    governor.onFrameDropped();
+            }
+            mPendingFrame = frame;
+            mPendingBounds = bounds;
+            mPendingPostedNanos = MetricsRegistry.now();
+            mPostedFrames++;
+            mMetrics.framesPosted.increment();
+            mLock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Drops the pending frame, if any, and discards results of recognitions in progress. Workers
+     * busy with an older frame finish it before taking new ones.
+     */
+    public void clear()
+    {
+        synchronized (mLock)
+        {
+            releasePendingLocked();
+            mGeneration++;
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * @return The number of frames offered through {@link #post(LeadFrame, LeadRect)}.
+     */
+    public long getPostedFrames()
+    {
+        synchronized (mLock)
+        {
+            return mPostedFrames;
+        }
+    }
+
+    /**
+     * @return The number of frames replaced by a newer frame before they were picked up.
+     */
+    public long getDroppedFrames()
+    {
+        synchronized (mLock)
+        {
+            return mDroppedFrames;
+        }
+    }
+
+    private void releasePendingLocked()
+    {
+        if (mPendingFrame != null)
+        {
+            mPendingFrame.release();
+            mPendingFrame = null;
+            mPendingBounds = null;
+        }
+    }
+
+    private void resetOrderLocked()
+    {
+        mReorderBuffer.clear();
+        mNextSequence = 0;
+        mNextDelivery = 0;
+    }
+
+    private void runWorker(TessEngine engine, int runId)
+    {
+        MicrBandLocator locator = new MicrBandLocator();
+        MicrBandLocator.Band band = new MicrBandLocator.Band();
+        while (true)
+        {
+            LeadFrame frame;
+            LeadRect bounds;
+            long postedNanos;
+            long sequence;
+            int generation;
+            synchronized (mLock)
+            {
+                while (mRunning && runId == mRunId && mPendingFrame == null)
+                {
+                    try
+                    {
+                        mLock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // Re-check mRunning
+                    }
+                }
+                if (!mRunning || runId != mRunId)
+                    return;
+                frame = mPendingFrame;
+                bounds = mPendingBounds;
+                postedNanos = mPendingPostedNanos;
+                mPendingFrame = null;
+                mPendingBounds = null;
+                sequence = mNextSequence++;
+                generation = mGeneration;
+            }
+
+            long start = mMetrics.queueWait.recordSince(postedNanos);
+            long pickedUpNanos = start;
+            Result result = null;
+            try
+            {
+                int width = bounds.get_width();
+                int height = bounds.get_height();
+                byte[] luma;
+                try
+                {
+                    YuvConverter.checkFrameRegion(frame, bounds.getLeft(), bounds.getTop(),
+                                                  width, height);
+                    luma = new byte[width * height];
+                    YuvConverter.extractLuma(frame, bounds.getLeft(), bounds.getTop(), width,
+                                             height, luma);
+                }
+                finally
+                {
+                    frame.release();
+                }
+                start = mMetrics.lumaExtract.recordSince(start);
+                boolean located = locator.locate(luma, width, height, band);
+                start = mMetrics.bandLocate.recordSince(start);
+                if (located)
+                {
+                    byte[] line = MicrBandLocator.crop(luma, width, band);
+                    result = recognize(engine, sequence, postedNanos, line, band.getWidth(),
+                                       band.getHeight());
+                    mMetrics.ocr.recordSince(start);
+                }
+                else
+                {
+                    // Blank paper or no cheque in the search area; not worth a recognition
+                    mMetrics.bandsNotFound.increment();
+                }
+            }
+            catch (RuntimeException ex)
+            {
+                // A bad frame or search area costs this frame only, not the worker
+                Log.d(TAG, "Error: " + ex + "\n" + ex.getMessage());
+                mMetrics.recognitionErrors.increment();
+            }
+            finally
+            {
+                PreviewGovernor governor = mPreviewGovernor;
+                if (governor != null)
+                    governor.onFrameProcessed(MetricsRegistry.now() - pickedUpNanos);
+                complete(runId, sequence, generation, result);
+            }
+        }
+    }
+
+    /**
+     * Stores the outcome of a frame and delivers every result that is now in order. Frames
+     * without a result still advance the order.
+     */
+    private void complete(int runId, long sequence, int generation, Result result)
+    {
+        synchronized (mLock)
+        {
+            if (runId != mRunId)
+                return;
+            // Results of frames picked up before clear() only hold their place in the order
+            boolean current = result != null && generation == mGeneration;
+            mReorderBuffer.put(sequence, current ? result : NO_RESULT);
+            final int deliveredGeneration = mGeneration;
+            Result next;
+            while ((next = mReorderBuffer.remove(mNextDelivery)) != null)
+            {
+                mNextDelivery++;
+                if (next == NO_RESULT)
+                    continue;
+                final Result ordered = next;
+                // Posting under the lock keeps the main thread queue in sequence order
+                mMainHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        synchronized (mLock)
+                        {
+                            if (!mRunning || deliveredGeneration != mGeneration)
+                                return;
+                        }
+                        mListener.onRecognized(ordered);
+                    }
+                });
+            }
+        }
+    }
+
+    private Result recognize(TessEngine engine, long sequence, long postedNanos, byte[] luma,
+                             int width, int height)
+    {
+        try
+        {
+            Pix pix = ReadFile.readBytes8(luma, width, height);
+            if (pix == null)
+            {
+                Log.e(TAG, "Error creating pix from MICR luma");
+                return null;
+            }
+            ResultClass result = engine.detectText(pix);
+            pix.recycle();
+            if (result == null)
+                return null;
+            result.recycle();
+            return new Result(sequence, postedNanos, result.rzlt, luma, width, height);
+        }
+        catch (Exception ex)
+        {
+            Log.d(TAG, "Error: " + ex + "\n" + ex.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+package com.senarios.checksandcards.Scanning;
+
+import com.senarios.checksandcards.Metrics.Counter;
+import com.senarios.checksandcards.Metrics.Histogram;
+import com.senarios.checksandcards.Metrics.MetricsRegistry;
+
+/**
+ * The instruments of the live MICR scan pipeline, in pipeline order.
+ */
+public class ScanMetrics
+{
+    /**
+     * Installation of the trained data, from the creation of the scanner
+     */
+    public final Histogram startupTrainedData;
+
+    /**
+     * Initialization of every engine, from the creation of the scanner
+     */
+    public final Histogram startupEngines;
+
+    /**
+     * From the start of a capture session, or the creation of the scanner for the first one, to
+     * the camera being opened
+     */
+    public final Histogram startupCameraOpen;
+
+    /**
+     * From the start of a capture session to its first preview frame
+     */
+    public final Histogram startupFirstFrame;
+
+    /**
+     * From the start of a capture session to its first recognition result
+     */
+    public final Histogram startupFirstRecognition;
+
+    /**
+     * Time spent in the camera frame callback
+     */
+    public final Histogram frameCallback;
+
+    /**
+     * Scoring of the search area by the frame quality gate, on the camera frame thread
+     */
+    public final Histogram qualityGate;
+
+    /**
+     * Time a frame waits in the mailbox until a worker picks it up
+     */
+    public final Histogram queueWait;
+
+    /**
+     * Copy of the search area luma out of the frame
+     */
+    public final Histogram lumaExtract;
+
+    /**
+     * Location of the MICR line within the search area
+     */
+    public final Histogram bandLocate;
+
+    /**
+     * Tesseract recognition of the located line, including the Pix conversion
+     */
+    public final Histogram ocr;
+
+    /**
+     * Line parsing and consensus vote on the main thread
+     */
+    public final Histogram parse;
+
+    /**
+     * From the frame being posted to its result reaching the main thread
+     */
+    public final Histogram frameToResult;
+
+    /**
+     * Frames rejected by the quality gate, by reason
+     */
+    public final Counter framesBlurred;
+
+    public final Counter framesBadlyExposed;
+
+    public final Counter framesMoving;
+
+    public final Counter framesPosted;
+
+    public final Counter framesDropped;
+
+    /**
+     * Frames skipped because no MICR line stood out in the search area
+     */
+    public final Counter bandsNotFound;
+
+    /**
+     * Frames whose extraction, location or recognition failed with an exception
+     */
+    public final Counter recognitionErrors;
+
+    public final Counter readsRejected;
+
+    public final Counter linesAccepted;
+
+    private final MetricsRegistry mRegistry;
+
+    public ScanMetrics(MetricsRegistry registry)
+    {
+        mRegistry = registry;
+        startupTrainedData = registry.histogram("startup_trained_data");
+        startupEngines = registry.histogram("startup_engines");
+        startupCameraOpen = registry.histogram("startup_camera_open");
+        startupFirstFrame = registry.histogram("startup_first_frame");
+        startupFirstRecognition = registry.histogram("startup_first_recognition");
+        frameCallback = registry.histogram("frame_callback");
+        qualityGate = registry.histogram("quality_gate");
+        queueWait = registry.histogram("queue_wait");
+        lumaExtract = registry.histogram("luma_extract");
+        bandLocate = registry.histogram("band_locate");
+        ocr = registry.histogram("ocr");
+        parse = registry.histogram("parse");
+        frameToResult = registry.histogram("frame_to_result");
+        framesBlurred = registry.counter("frames_blurred");
+        framesBadlyExposed = registry.counter("frames_badly_exposed");
+        framesMoving = registry.counter("frames_moving");
+        framesPosted = registry.counter("frames_posted");
+        framesDropped = registry.counter("frames_dropped");
+        bandsNotFound = registry.counter("bands_not_found");
+        recognitionErrors = registry.counter("recognition_errors");
+        readsRejected = registry.counter("reads_rejected");
+        linesAccepted = registry.counter("lines_accepted");
+    }
+
+    public MetricsRegistry getRegistry()
+    {
+        return mRegistry;
+    }
+}
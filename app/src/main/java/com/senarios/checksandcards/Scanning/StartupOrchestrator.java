@@ -0,0 +1,185 @@
+package com.senarios.checksandcards.Scanning;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.senarios.checksandcards.Metrics.Histogram;
+import com.senarios.checksandcards.Metrics.MetricsRegistry;
+import com.senarios.checksandcards.TessTool.TessDataManager;
+import com.senarios.checksandcards.TessTool.TessEngine;
+
+import java.util.Locale;
+
+/**
+ * Overlaps the work that stands between opening the scanner and the first MICR recognition, and
+ * measures how long it takes.
+ * <p>
+ * {@link #start(Context, TessEngine[])} installs the trained data and initializes every engine on
+ * background threads right away, so that they proceed while the layout is inflated and the camera
+ * opens. The engines wait for the trained data on their own; a worker that needs its engine
+ * before the warm-up is done waits for it too.
+ * <p>
+ * Each capture session is timed from its start: the first one from the creation of the
+ * orchestrator (a cold start), later ones from {@link #onCaptureStarted()} (a restart). The
+ * milestones are recorded in {@link ScanMetrics} and summarized in the log when the first
+ * recognition of the session arrives.
+ */
+public class StartupOrchestrator
+{
+    private static final String TAG = "DBG_" + StartupOrchestrator.class.getName();
+
+    private final ScanMetrics mMetrics;
+
+    private final long mCreatedNanos = MetricsRegistry.now();
+
+    private Context mContext;
+
+    private int mPendingEngines;
+
+    private long mTrainedDataMillis = -1;
+
+    private long mEnginesMillis = -1;
+
+    private boolean mCold = true;
+
+    private boolean mSessionStarted;
+
+    private long mSessionStart = mCreatedNanos;
+
+    private long mCameraOpenedMillis = -1;
+
+    private long mFirstFrameMillis = -1;
+
+    /**
+     * Read on the frame thread for every frame, so that only the first one takes the lock
+     */
+    private volatile boolean mFirstFrameSeen;
+
+    private boolean mFirstRecognitionSeen;
+
+    public StartupOrchestrator(ScanMetrics metrics)
+    {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Starts installing the trained data and initializing {@code engines}, each on its own
+     * thread. Call it as early as possible, before the layout is inflated.
+     */
+    public void start(Context context, TessEngine[] engines)
+    {
+        synchronized (this)
+        {
+            mContext = context.getApplicationContext();
+            mPendingEngines = engines.length;
+        }
+        new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                TessDataManager.initTessTrainedData(mContext);
+                onTrainedDataReady();
+            }
+        }, "StartupTrainedData").start();
+        for (int i = 0; i < engines.length; i++)
+        {
+            final TessEngine engine = engines[i];
+            // Left at the default priority: this is the critical path to the first recognition
+            new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (!engine.init())
+                        Log.e(TAG, "Engine warm-up failed");
+                    onEngineReady();
+                }
+            }, "StartupEngine-" + i).start();
+        }
+    }
+
+    /**
+     * Starts timing a capture session. Call it from the main thread right before the camera is
+     * started.
+     */
+    public synchronized void onCaptureStarted()
+    {
+        if (mSessionStarted)
+        {
+            mCold = false;
+            mSessionStart = MetricsRegistry.now();
+        }
+        mSessionStarted = true;
+        mCameraOpenedMillis = -1;
+        mFirstFrameMillis = -1;
+        mFirstRecognitionSeen = false;
+        mFirstFrameSeen = false;
+    }
+
+    public synchronized void onCameraOpened()
+    {
+        if (mCameraOpenedMillis < 0)
+            mCameraOpenedMillis = elapsedMillis(mMetrics.startupCameraOpen, mSessionStart);
+    }
+
+    /**
+     * Called for every preview frame, from the frame thread.
+     */
+    public void onFrame()
+    {
+        if (mFirstFrameSeen)
+            return;
+        synchronized (this)
+        {
+            if (mFirstFrameSeen)
+                return;
+            mFirstFrameSeen = true;
+            mFirstFrameMillis = elapsedMillis(mMetrics.startupFirstFrame, mSessionStart);
+        }
+    }
+
+    /**
+     * Called on the main thread for every recognition result, whether or not it parses.
+     */
+    public synchronized void onRecognized()
+    {
+        if (mFirstRecognitionSeen)
+            return;
+        mFirstRecognitionSeen = true;
+        long firstRecognitionMillis = elapsedMillis(mMetrics.startupFirstRecognition,
+                                                    mSessionStart);
+        if (mCold)
+        {
+            Log.i(TAG, String.format(Locale.US,
+                                     "Cold start: trained data %d ms, engines %d ms, camera %d ms, " +
+                                             "first frame %d ms, first recognition %d ms",
+                                     mTrainedDataMillis, mEnginesMillis, mCameraOpenedMillis,
+                                     mFirstFrameMillis, firstRecognitionMillis));
+        }
+        else
+        {
+            Log.i(TAG, String.format(Locale.US,
+                                     "Restart: camera %d ms, first frame %d ms, " +
+                                             "first recognition %d ms",
+                                     mCameraOpenedMillis, mFirstFrameMillis,
+                                     firstRecognitionMillis));
+        }
+    }
+
+    private synchronized void onTrainedDataReady()
+    {
+        mTrainedDataMillis = elapsedMillis(mMetrics.startupTrainedData, mCreatedNanos);
+    }
+
+    private synchronized void onEngineReady()
+    {
+        if (--mPendingEngines == 0)
+            mEnginesMillis = elapsedMillis(mMetrics.startupEngines, mCreatedNanos);
+    }
+
+    private static long elapsedMillis(Histogram histogram, long startNanos)
+    {
+        return (histogram.recordSince(startNanos) - startNanos) / 1000000L;
+    }
+}
@@ -0,0 +1,59 @@
+package com.senarios.checksandcards.TessTool;
+
+/**
+ * Controls the extra work a {@link TessEngine} does around each recognition.
+ * <p>
+ * {@link #PRODUCTION} does nothing beyond recognizing the text. {@link #DIAGNOSTIC} enables
+ * Tesseract debug output, returns the thresholded image in {@link ResultClass#pix} and releases
+ * memory aggressively after every recognition.
+ */
+public class OcrProfile {
+
+    /**
+     * Keep the image and results until the next recognition replaces them.
+     */
+    public static final int RELEASE_NONE = 0;
+
+    /**
+     * Clear the image and recognition results after every recognition; the model stays loaded.
+     */
+    public static final int RELEASE_RESULTS = 1;
+
+    /**
+     * Clear the image and results and request a garbage collection after every recognition.
+     */
+    public static final int RELEASE_AND_COLLECT = 2;
+
+    public static final OcrProfile PRODUCTION = new OcrProfile(false, false, RELEASE_NONE);
+
+    public static final OcrProfile DIAGNOSTIC = new OcrProfile(true, true, RELEASE_AND_COLLECT);
+
+    private final boolean debug;
+    private final boolean thresholdedImage;
+    private final int releasePolicy;
+
+    /**
+     * @param debug            Enables Tesseract debug output.
+     * @param thresholdedImage Returns the thresholded image of every recognition in
+     *                         {@link ResultClass#pix}.
+     * @param releasePolicy    One of {@link #RELEASE_NONE}, {@link #RELEASE_RESULTS} or
+     *                         {@link #RELEASE_AND_COLLECT}.
+     */
+    public OcrProfile(boolean debug, boolean thresholdedImage, int releasePolicy) {
+        this.debug = debug;
+        this.thresholdedImage = thresholdedImage;
+        this.releasePolicy = releasePolicy;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public boolean producesThresholdedImage() {
+        return thresholdedImage;
+    }
+
+    public int getReleasePolicy() {
+        return releasePolicy;
+    }
+}
@@ -14,4 +14,16 @@ public class ResultClass {
         rzlt=s;
         pix=p;
     }
+
+    /**
+     * Releases the native thresholded image, if the engine profile produced one.
+     */
+    public void recycle()
+    {
+        if (pix != null)
+        {
+            pix.recycle();
+            pix = null;
+        }
+    }
 }
@@ -1,114 +1,287 @@
 package com.senarios.checksandcards.TessTool;
 
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.util.Log;
 
 import com.senarios.checksandcards.R;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Properties;
 
 
 /**
  * Created by Fadi on 6/11/2014.
+ *
+ * Installs Tesseract trained data from raw resources into {@code files/tesseract/tessdata}, one
+ * {@code <language>.traineddata} file per model.
+ * <p>
+ * A model is streamed into a temporary file while its SHA-256 is computed, the written file is
+ * hashed again and only then renamed into place, so a partial copy is never taken for a model.
+ * A marker next to the model records the app build it came from, its length and its hash; a
+ * model whose marker is missing, from another build or of another length is installed again.
  */
 public class TessDataManager {
 
     static final String TAG = "DBG_" + TessDataManager.class.getName();
 
+    public static final String DEFAULT_LANGUAGE = "mcr";
+
     private static final String tessdir = "tesseract";
     private static final String subdir = "tessdata";
-    private static final String filename = "mcr.traineddata";
+    private static final String TRAINED_DATA_SUFFIX = ".traineddata";
+    private static final String MARKER_SUFFIX = ".marker";
+    private static final String TEMP_SUFFIX = ".tmp";
 
-    private static String trainedDataPath;
+    private static final String MARKER_SOURCE = "source";
+    private static final String MARKER_LENGTH = "length";
+    private static final String MARKER_SHA256 = "sha256";
+
+    /**
+     * Bytes moved per channel transfer
+     */
+    private static final int COPY_CHUNK = 64 * 1024;
 
     private static String tesseractFolder;
 
+    /**
+     * Paths of the models installed in this process, by language
+     */
+    private static final HashMap<String, String> installed = new HashMap<>();
+
     public static String getTesseractFolder() {
         return tesseractFolder;
     }
 
-    public static String getTrainedDataPath(){
-        return initiated ? trainedDataPath : null;
+    /**
+     * @return The path of the default model, or {@code null} if it is not installed.
+     */
+    public static String getTrainedDataPath() {
+        return getTrainedDataPath(DEFAULT_LANGUAGE);
     }
 
-    private static boolean initiated;
+    /**
+     * @return The path of the model of {@code language}, or {@code null} if it is not installed.
+     */
+    public static synchronized String getTrainedDataPath(String language) {
+        return installed.get(language);
+    }
 
-    public static void initTessTrainedData(Context context){
+    /**
+     * Installs the default model, {@code mcr}, if needed.
+     *
+     * @return {@code true} if the model is ready for {@code TessBaseAPI.init}.
+     */
+    public static boolean initTessTrainedData(Context context) {
+        return installModel(context, DEFAULT_LANGUAGE, R.raw.mcr);
+    }
 
-        if(initiated)
-            return;
-
-        File appFolder = context.getFilesDir();
-        File folder = new File(appFolder, tessdir);
-        if(!folder.exists())
-            folder.mkdir();
-        tesseractFolder = folder.getAbsolutePath();
+    /**
+     * Installs the model of {@code language} from a raw resource, unless a complete copy from
+     * this build of the app is already installed.
+     *
+     * @return {@code true} if the model is ready for {@code TessBaseAPI.init}.
+     */
+    public static synchronized boolean installModel(Context context, String language,
+                                                    int rawResId) {
+        if (installed.containsKey(language))
+            return true;
 
+        File folder = new File(context.getFilesDir(), tessdir);
         File subfolder = new File(folder, subdir);
-        if(!subfolder.exists())
-            subfolder.mkdir();
-
-        File file = new File(subfolder, filename);
-        trainedDataPath = file.getAbsolutePath();
-        Log.d(TAG, "Trained data filepath: " + trainedDataPath);
-
-        if(!file.exists()) {
+        if (!subfolder.isDirectory() && !subfolder.mkdirs()) {
+            Log.e(TAG, "Error creating trained data folder " + subfolder);
+            return false;
+        }
+        tesseractFolder = folder.getAbsolutePath();
 
-            try {
-                FileOutputStream fileOutputStream;
-                byte[] bytes = readRawTrainingData(context);
-                if (bytes == null)
-                    return;
-                fileOutputStream = new FileOutputStream(file);
-                fileOutputStream.write(bytes);
-                fileOutputStream.close();
-                initiated = true;
-                Log.d(TAG, "Prepared training data file");
-            } catch (FileNotFoundException e) {
-                Log.e(TAG, "Error opening training data file\n" + e.getMessage());
-            } catch (IOException e) {
-                Log.e(TAG, "Error opening training data file\n" + e.getMessage());
+        File file = new File(subfolder, language + TRAINED_DATA_SUFFIX);
+        Log.d(TAG, "Trained data filepath: " + file.getAbsolutePath());
+        String source = getSourceVersion(context);
+        try {
+            if (!isInstalled(file, source)) {
+                InputStream in = context.getResources().openRawResource(rawResId);
+                try {
+                    install(in, file, source);
+                } finally {
+                    in.close();
+                }
+                Log.d(TAG, "Prepared training data file " + file.getName());
             }
+        } catch (IOException e) {
+            Log.e(TAG, "Error installing training data file\n" + e.getMessage());
+            return false;
         }
-        else{
-            initiated = true;
-        }
+        installed.put(language, file.getAbsolutePath());
+        return true;
     }
 
-    private static byte[] readRawTrainingData(Context context){
+    /**
+     * Identifies the build of the app the models come from; any update of the app changes it.
+     */
+    private static String getSourceVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0);
+            return info.versionCode + "-" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "unknown";
+        }
+    }
 
+    /**
+     * @return {@code true} if {@code file} has a marker from {@code source} and the length the
+     * marker records. The hash is only checked at installation.
+     */
+    static boolean isInstalled(File file, String source) {
+        Properties marker = readMarker(markerFile(file));
+        if (marker == null || !source.equals(marker.getProperty(MARKER_SOURCE)))
+            return false;
         try {
-            InputStream fileInputStream = context.getResources()
-                    .openRawResource(R.raw.mcr);
+            return file.length() == Long.parseLong(marker.getProperty(MARKER_LENGTH, "-1"));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    /**
+     * Streams {@code in} into {@code file} through a temporary file, verifies the written bytes
+     * against the hash of what was read, renames it into place and writes its marker.
+     */
+    static void install(InputStream in, File file, String source) throws IOException {
+        File marker = markerFile(file);
+        // Without a marker, an interrupted installation is retried on the next launch
+        if (marker.exists() && !marker.delete())
+            throw new IOException("Cannot delete " + marker);
 
-            byte[] b = new byte[1024];
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        MessageDigest digest = newSha256();
+        DigestInputStream digestIn = new DigestInputStream(in, digest);
+        ReadableByteChannel src = Channels.newChannel(digestIn);
+        long length = 0;
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            FileChannel channel = out.getChannel();
+            long transferred;
+            while ((transferred = channel.transferFrom(src, length, COPY_CHUNK)) > 0) {
+                length += transferred;
+            }
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+        String sha256 = toHex(digest.digest());
 
-            int bytesRead;
+        if (temp.length() != length || !sha256.equals(hashFile(temp))) {
+            temp.delete();
+            throw new IOException("Verification failed for " + file.getName());
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file.getName());
+        }
 
-            while (( bytesRead = fileInputStream.read(b))!=-1){
-                bos.write(b, 0, bytesRead);
-            }
+        Properties properties = new Properties();
+        properties.setProperty(MARKER_SOURCE, source);
+        properties.setProperty(MARKER_LENGTH, Long.toString(length));
+        properties.setProperty(MARKER_SHA256, sha256);
+        writeMarker(marker, properties);
+    }
 
-            fileInputStream.close();
+    /**
+     * @return The hash recorded when {@code file} was installed, or {@code null}.
+     */
+    static String getInstalledSha256(File file) {
+        Properties marker = readMarker(markerFile(file));
+        return marker == null ? null : marker.getProperty(MARKER_SHA256);
+    }
 
-            return bos.toByteArray();
+    private static File markerFile(File file) {
+        return new File(file.getPath() + MARKER_SUFFIX);
+    }
 
-        } catch (FileNotFoundException e) {
-            Log.e(TAG, "Error reading raw training data file\n"+e.getMessage());
+    private static Properties readMarker(File marker) {
+        if (!marker.isFile())
             return null;
+        Properties properties = new Properties();
+        try {
+            FileInputStream in = new FileInputStream(marker);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
         } catch (IOException e) {
-            Log.e(TAG, "Error reading raw training data file\n" + e.getMessage());
+            return null;
         }
+        return properties;
+    }
 
-        return null;
+    private static void writeMarker(File marker, Properties properties) throws IOException {
+        File temp = new File(marker.getPath() + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            Writer writer = new OutputStreamWriter(out, Charset.forName("ISO-8859-1"));
+            properties.store(writer, null);
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(marker)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + marker.getName());
+        }
+    }
+
+    private static String hashFile(File file) throws IOException {
+        MessageDigest digest = newSha256();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_CHUNK);
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newSha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 unavailable", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
     }
 
 }
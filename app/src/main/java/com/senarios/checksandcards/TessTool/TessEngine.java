@@ -9,42 +9,133 @@ import com.googlecode.tesseract.android.TessBaseAPI;
 
 /**
  * Created by Fadi on 6/11/2014.
+ *
+ * Owns a single {@link TessBaseAPI} that is initialized once, on first use or through
+ * {@link #init()}, and reused for every recognition until {@link #end()} is called. An engine is
+ * not meant to be shared between threads; calls are serialized.
+ * <p>
+ * {@link #end()} closes the engine for good: a warm-up or recognition that was still pending on
+ * another thread then fails instead of creating a native API that nobody would release.
  */
 public class TessEngine {
     static final String TAG = "DBG_" + TessEngine.class.getName();
 
     private Context context;
 
-    private TessEngine(Context context){
+    private OcrProfile profile;
+
+    private TessBaseAPI tessBaseAPI;
+
+    private boolean closed;
+
+    private TessEngine(Context context, OcrProfile profile){
         this.context = context;
+        this.profile = profile;
     }
 
     public static TessEngine Generate(Context context) {
-        return new TessEngine(context);
+        return Generate(context, OcrProfile.PRODUCTION);
+    }
+
+    public static TessEngine Generate(Context context, OcrProfile profile) {
+        return new TessEngine(context.getApplicationContext(), profile);
     }
 
-    public ResultClass detectText(Bitmap bitmap) {
+    /**
+     * Loads the trained data and initializes the underlying {@link TessBaseAPI} if this has not
+     * been done yet.
+     *
+     * @return {@code true} if the engine is ready for recognition, {@code false} if it failed or
+     * the engine was ended.
+     */
+    public synchronized boolean init() {
+        if (tessBaseAPI != null)
+            return true;
+        if (closed) {
+            Log.d(TAG, "Engine already ended");
+            return false;
+        }
+
         Log.d(TAG, "Initialization of TessBaseApi");
-        TessDataManager.initTessTrainedData(context);
-        TessBaseAPI tessBaseAPI = new TessBaseAPI();
+        if (!TessDataManager.initTessTrainedData(context)) {
+            Log.e(TAG, "Trained data unavailable");
+            return false;
+        }
         String path = TessDataManager.getTesseractFolder();
         Log.d(TAG, "Tess folder: " + path);
-        tessBaseAPI.setDebug(true);
-        tessBaseAPI.init(path, "mcr", TessBaseAPI.OEM_TESSERACT_LSTM_COMBINED);
-        tessBaseAPI.setVariable(TessBaseAPI.VAR_CHAR_WHITELIST, "1234567890ACD");
-        tessBaseAPI.setVariable(TessBaseAPI.VAR_CHAR_BLACKLIST, "!@#$%^&*()_+=-qwertyuiop[]}{POIU" +
+        TessBaseAPI api = new TessBaseAPI();
+        api.setDebug(profile.isDebug());
+        if (!api.init(path, TessDataManager.DEFAULT_LANGUAGE,
+                TessBaseAPI.OEM_TESSERACT_LSTM_COMBINED)) {
+            Log.e(TAG, "Error initializing TessBaseApi");
+            api.end();
+            return false;
+        }
+        api.setVariable(TessBaseAPI.VAR_CHAR_WHITELIST, "1234567890ACD");
+        api.setVariable(TessBaseAPI.VAR_CHAR_BLACKLIST, "!@#$%^&*()_+=-qwertyuiop[]}{POIU" +
                 "YTREWQsSfghFGHjklJKLl;L:'\"\\|~`xvXVnmNM,./<>?Bb");
-//        tessBaseAPI.setPageSegMode(TessBaseAPI.PageSegMode.PSM_SINGLE_LINE);
+//        api.setPageSegMode(TessBaseAPI.PageSegMode.PSM_SINGLE_LINE);
+        tessBaseAPI = api;
         Log.d(TAG, "Ended initialization of TessEngine");
-        Log.d(TAG, "Running inspection on bitmap");
+        return true;
+    }
+
+    public synchronized boolean isInitialized() {
+        return tessBaseAPI != null;
+    }
+
+    public synchronized ResultClass detectText(Bitmap bitmap) {
+        if (!init())
+            return null;
+        if (profile.isDebug())
+            Log.d(TAG, "Running inspection on bitmap");
         tessBaseAPI.setImage(bitmap);
-        Pix pix = tessBaseAPI.getThresholdedImage();
+        return recognize();
+    }
+
+    /**
+     * Recognizes an 8-bit grayscale image, e.g. a luma crop of a preview frame, without going
+     * through a {@link Bitmap}.
+     */
+    public synchronized ResultClass detectText(Pix pix) {
+        if (!init())
+            return null;
+        if (profile.isDebug())
+            Log.d(TAG, "Running inspection on pix");
+        tessBaseAPI.setImage(pix);
+        return recognize();
+    }
+
+    private ResultClass recognize() {
+        Pix pix = profile.producesThresholdedImage() ? tessBaseAPI.getThresholdedImage() : null;
         String inspection = tessBaseAPI.getUTF8Text();
         ResultClass resultClass = new ResultClass(inspection,pix);
-        Log.d(TAG, "Got data: " + inspection);
-        tessBaseAPI.end();
-        System.gc();
+        if (profile.isDebug())
+            Log.d(TAG, "Got data: " + inspection);
+        switch (profile.getReleasePolicy()) {
+            case OcrProfile.RELEASE_AND_COLLECT:
+                tessBaseAPI.clear();
+                System.gc();
+                break;
+            case OcrProfile.RELEASE_RESULTS:
+                // Drop the image and recognition results but keep the loaded model
+                tessBaseAPI.clear();
+                break;
+        }
         return resultClass;
     }
 
+    /**
+     * Releases the underlying {@link TessBaseAPI} and closes the engine: later calls to
+     * {@link #init()} return {@code false} and recognitions return {@code null}.
+     */
+    public synchronized void end() {
+        closed = true;
+        if (tessBaseAPI != null) {
+            tessBaseAPI.end();
+            tessBaseAPI = null;
+            Log.d(TAG, "Ended TessBaseApi");
+        }
+    }
+
 }
@@ -0,0 +1,67 @@
+package com.senarios.checksandcards.Metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link Histogram}.
+ */
+public class HistogramTest
+{
+    private static final long MS = 1000000L;
+
+    @Test
+    public void emptyHistogramReportsZero()
+    {
+        Histogram histogram = new Histogram("empty");
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(0.99));
+        assertEquals(0, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void percentilesFallInTheRightBucket()
+    {
+        Histogram histogram = new Histogram("ocr");
+        for (int i = 0; i < 90; i++)
+        {
+            histogram.record(10 * MS);
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            histogram.record(200 * MS);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(200 * MS, histogram.getMaxNanos());
+        assertEquals(29 * MS, histogram.getMeanNanos());
+
+        long p50 = histogram.getPercentileNanos(0.50);
+        assertTrue(p50 >= 10 * MS && p50 < 12 * MS);
+        long p95 = histogram.getPercentileNanos(0.95);
+        assertEquals(200 * MS, p95);
+    }
+
+    @Test
+    public void outOfRangeValuesAreKept()
+    {
+        Histogram histogram = new Histogram("range");
+        histogram.record(-5);
+        histogram.record(60000 * MS);
+        assertEquals(2, histogram.getCount());
+        // Negative durations count as 0, in the lowest bucket
+        assertEquals(10000, histogram.getPercentileNanos(0.5));
+        assertEquals(60000 * MS, histogram.getPercentileNanos(1.0));
+    }
+
+    @Test
+    public void resetClearsTheHistogram()
+    {
+        Histogram histogram = new Histogram("reset");
+        histogram.record(MS);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+}
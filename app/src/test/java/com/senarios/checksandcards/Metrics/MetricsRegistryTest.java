@@ -0,0 +1,50 @@
+package com.senarios.checksandcards.Metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Local unit tests of {@link MetricsRegistry}.
+ */
+public class MetricsRegistryTest
+{
+    @Test
+    public void instrumentsAreRegisteredOnce()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.histogram("ocr"), registry.histogram("ocr"));
+        assertSame(registry.counter("frames"), registry.counter("frames"));
+    }
+
+    @Test
+    public void jsonListsEveryInstrument()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("ocr")
+                .record(2000000L);
+        registry.counter("frames")
+                .add(3);
+        registry.counter("dialog \"shown\"");
+        assertEquals("{\"histograms\":{\"ocr\":{\"count\":1,\"mean\":2000,\"p50\":2000," +
+                             "\"p95\":2000,\"p99\":2000,\"max\":2000}}," +
+                             "\"counters\":{\"frames\":3,\"dialog \\\"shown\\\"\":0}}",
+                     registry.toJson());
+    }
+
+    @Test
+    public void resetClearsEveryInstrument()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("ocr")
+                .record(1000L);
+        registry.counter("frames")
+                .increment();
+        registry.reset();
+        assertEquals(0, registry.histogram("ocr")
+                                .getCount());
+        assertEquals(0, registry.counter("frames")
+                                .get());
+    }
+}
@@ -0,0 +1,96 @@
+package com.senarios.checksandcards.Scanning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of {@link FrameQualityGate}.
+ */
+public class FrameQualityGateTest
+{
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 16;
+
+    /**
+     * Dark character-like blocks on paper, starting at column {@code shift}
+     */
+    private static byte[] text(int shift)
+    {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                boolean ink = y > 3 && y < 12 && (x + shift) % 8 < 4;
+                luma[y * WIDTH + x] = (byte)(ink ? 40 : 200);
+            }
+        }
+        return luma;
+    }
+
+    private static byte[] uniform(int value)
+    {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < luma.length; i++)
+        {
+            luma[i] = (byte)value;
+        }
+        return luma;
+    }
+
+    @Test
+    public void sharpFrameIsAccepted()
+    {
+        FrameQualityGate gate = new FrameQualityGate();
+        assertEquals(FrameQualityGate.ACCEPTED, gate.evaluate(text(0), WIDTH, HEIGHT));
+        assertEquals(FrameQualityGate.ACCEPTED, gate.evaluate(text(0), WIDTH, HEIGHT));
+        assertEquals(0f, gate.getMotion(), 0f);
+    }
+
+    @Test
+    public void flatFrameIsRejectedAsBlurred()
+    {
+        FrameQualityGate gate = new FrameQualityGate();
+        assertEquals(FrameQualityGate.REJECTED_BLUR, gate.evaluate(uniform(150), WIDTH, HEIGHT));
+        assertEquals(0f, gate.getSharpness(), 0f);
+    }
+
+    @Test
+    public void darkAndBrightFramesAreRejectedAsExposure()
+    {
+        FrameQualityGate gate = new FrameQualityGate();
+        assertEquals(FrameQualityGate.REJECTED_EXPOSURE, gate.evaluate(uniform(20), WIDTH, HEIGHT));
+        assertEquals(FrameQualityGate.REJECTED_EXPOSURE,
+                     gate.evaluate(uniform(255), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void movedFrameIsRejectedAsMotion()
+    {
+        FrameQualityGate gate = new FrameQualityGate();
+        gate.evaluate(text(0), WIDTH, HEIGHT);
+        assertEquals(FrameQualityGate.REJECTED_MOTION, gate.evaluate(text(4), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void resetForgetsPreviousFrame()
+    {
+        FrameQualityGate gate = new FrameQualityGate();
+        gate.evaluate(text(0), WIDTH, HEIGHT);
+        gate.reset();
+        assertEquals(FrameQualityGate.ACCEPTED, gate.evaluate(text(4), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void thresholdsAreConfigurable()
+    {
+        FrameQualityGate gate = new FrameQualityGate();
+        gate.setMinSharpness(Float.MAX_VALUE);
+        assertEquals(FrameQualityGate.REJECTED_BLUR, gate.evaluate(text(0), WIDTH, HEIGHT));
+        gate.setMinSharpness(0);
+        gate.setMaxMotion(Float.MAX_VALUE);
+        assertEquals(FrameQualityGate.ACCEPTED, gate.evaluate(text(4), WIDTH, HEIGHT));
+    }
+}
@@ -0,0 +1,112 @@
+package com.senarios.checksandcards.Scanning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link MicrBandLocator}.
+ */
+public class MicrBandLocatorTest
+{
+    private static final int WIDTH = 400;
+
+    private static final int HEIGHT = 120;
+
+    private static final int PAPER = 200;
+
+    /**
+     * Paper with a little noise, like a preview frame of a blank area
+     */
+    private static byte[] paper()
+    {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < luma.length; i++)
+        {
+            luma[i] = (byte)(PAPER + (i * 7919 % 5) - 2);
+        }
+        return luma;
+    }
+
+    /**
+     * Draws a row of character-like blocks: 6 dark columns out of every 10
+     */
+    private static void drawLine(byte[] luma, int left, int top, int right, int bottom)
+    {
+        for (int y = top; y < bottom; y++)
+        {
+            for (int x = left; x < right; x++)
+            {
+                if ((x - left) % 10 < 6)
+                    luma[y * WIDTH + x] = (byte)30;
+            }
+        }
+    }
+
+    @Test
+    public void locatesLine()
+    {
+        byte[] luma = paper();
+        drawLine(luma, 100, 70, 300, 90);
+        MicrBandLocator.Band band = new MicrBandLocator.Band();
+        assertTrue(new MicrBandLocator().locate(luma, WIDTH, HEIGHT, band));
+
+        assertTrue(band.top <= 70 && band.top >= 55);
+        assertTrue(band.bottom >= 90 && band.bottom <= 105);
+        assertTrue(band.left <= 100 && band.left >= 70);
+        assertTrue(band.right >= 296 && band.right <= 330);
+    }
+
+    @Test
+    public void locatesLineAtEdge()
+    {
+        byte[] luma = paper();
+        drawLine(luma, 0, 100, WIDTH, HEIGHT);
+        MicrBandLocator.Band band = new MicrBandLocator.Band();
+        assertTrue(new MicrBandLocator().locate(luma, WIDTH, HEIGHT, band));
+
+        assertEquals(HEIGHT, band.bottom);
+        assertTrue(band.top <= 100 && band.top >= 85);
+        assertEquals(0, band.left);
+    }
+
+    @Test
+    public void blankPaperIsRejected()
+    {
+        MicrBandLocator.Band band = new MicrBandLocator.Band();
+        assertFalse(new MicrBandLocator().locate(paper(), WIDTH, HEIGHT, band));
+    }
+
+    @Test
+    public void smoothShadingIsRejected()
+    {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                luma[y * WIDTH + x] = (byte)(80 + x * 150 / WIDTH);
+            }
+        }
+        MicrBandLocator.Band band = new MicrBandLocator.Band();
+        assertFalse(new MicrBandLocator().locate(luma, WIDTH, HEIGHT, band));
+    }
+
+    @Test
+    public void cropCopiesBand()
+    {
+        byte[] luma = new byte[]{
+                0, 1, 2, 3,
+                4, 5, 6, 7,
+                8, 9, 10, 11};
+        MicrBandLocator.Band band = new MicrBandLocator.Band();
+        band.left = 1;
+        band.top = 1;
+        band.right = 3;
+        band.bottom = 3;
+        assertArrayEquals(new byte[]{5, 6, 9, 10}, MicrBandLocator.crop(luma, 4, band));
+    }
+}
@@ -0,0 +1,77 @@
+package com.senarios.checksandcards.Scanning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Local unit tests of {@link MicrConsensus}.
+ */
+public class MicrConsensusTest
+{
+    private static final String LINE = "C000123C021000021A123456789C";
+
+    @Test
+    public void singleReadIsNotAccepted()
+    {
+        MicrConsensus consensus = new MicrConsensus(2, 4);
+        assertNull(consensus.offer(LINE));
+        assertEquals(1f, consensus.getConfidence(0), 0f);
+    }
+
+    @Test
+    public void agreeingReadsAreAccepted()
+    {
+        MicrConsensus consensus = new MicrConsensus(3, 5);
+        assertNull(consensus.offer(LINE));
+        assertNull(consensus.offer(LINE));
+        assertEquals(LINE, consensus.offer(LINE));
+    }
+
+    @Test
+    public void misreadCharacterIsOutvoted()
+    {
+        MicrConsensus consensus = new MicrConsensus(2, 5);
+        String misread = "C000123C021000027A123456789C";
+        assertNull(consensus.offer(misread));
+        assertNull(consensus.offer(LINE));
+        assertEquals(LINE, consensus.offer(LINE));
+        assertEquals(2f / 3f, consensus.getConfidence(misread.indexOf('7')), 1e-6f);
+    }
+
+    @Test
+    public void readsOfAnotherLengthDoNotVote()
+    {
+        MicrConsensus consensus = new MicrConsensus(2, 5);
+        assertNull(consensus.offer(LINE));
+        assertNull(consensus.offer(LINE + "0"));
+        assertEquals(LINE, consensus.offer(LINE));
+    }
+
+    @Test
+    public void oldReadsLeaveTheWindow()
+    {
+        MicrConsensus consensus = new MicrConsensus(2, 2);
+        assertNull(consensus.offer(LINE));
+        assertNull(consensus.offer("C999999C021000021A123456789C"));
+        assertNull(consensus.offer("C888888C021000021A123456789C"));
+        assertEquals(2, consensus.getReadCount());
+    }
+
+    @Test
+    public void resetForgetsReads()
+    {
+        MicrConsensus consensus = new MicrConsensus(2, 4);
+        consensus.offer(LINE);
+        consensus.reset();
+        assertEquals(0, consensus.getReadCount());
+        assertNull(consensus.offer(LINE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdAboveWindowIsRejected()
+    {
+        new MicrConsensus(3, 2);
+    }
+}
@@ -0,0 +1,105 @@
+package com.senarios.checksandcards.Scanning;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link MicrLineParser}.
+ */
+public class MicrLineParserTest
+{
+    private final MicrLineParser mParser = new MicrLineParser();
+
+    private final MicrLineParser.Result mResult = new MicrLineParser.Result();
+
+    @Test
+    public void auxiliaryOnUsLine()
+    {
+        assertTrue(mParser.parse("C000123C021000021A123456789C", mResult));
+        assertEquals("021000021", mResult.routing.toString());
+        assertEquals("123456789", mResult.account.toString());
+        assertEquals("000123", mResult.cheque.toString());
+    }
+
+    @Test
+    public void trailingTransactionCodeIsAccepted()
+    {
+        assertTrue(mParser.parse("C000123C021000021A123456789C01", mResult));
+        assertEquals("021000021", mResult.routing.toString());
+        assertEquals("123456789", mResult.account.toString());
+        assertEquals("000123", mResult.cheque.toString());
+        assertEquals("01", mResult.transactionCode.toString());
+    }
+
+    @Test
+    public void whitespaceIsIgnored()
+    {
+        assertTrue(mParser.parse(" C000123C \n021000021A 123456789C\n", mResult));
+        assertEquals("C000123C021000021A123456789C", mResult.line.toString());
+    }
+
+    @Test
+    public void chequeAfterAccount()
+    {
+        assertTrue(mParser.parse("A011000015A12D345D6C0101", mResult));
+        assertEquals("011000015", mResult.routing.toString());
+        assertEquals("12-345-6", mResult.account.toString());
+        assertEquals("0101", mResult.cheque.toString());
+    }
+
+    @Test
+    public void amountIsNotRecognized()
+    {
+        assertFalse(mParser.parse("A011000015A12D345D6C0101B0000012500B", mResult));
+    }
+
+    @Test
+    public void badCheckDigitIsRejected()
+    {
+        assertFalse(mParser.parse("C000123C021000022A123456789C", mResult));
+        assertEquals("021000022", mResult.routing.toString());
+    }
+
+    @Test
+    public void shortRoutingIsRejected()
+    {
+        assertFalse(mParser.parse("C000123C02100002A123456789C", mResult));
+    }
+
+    @Test
+    public void missingAccountIsRejected()
+    {
+        assertFalse(mParser.parse("C000123C021000021A", mResult));
+    }
+
+    @Test
+    public void unexpectedSymbolsAreRejected()
+    {
+        assertFalse(mParser.parse("C000123C021000021A1234X56789C", mResult));
+        assertFalse(mParser.parse("C000123D45C021000021A123456789C", mResult));
+        assertFalse(mParser.parse("C000123C021000021A123456789C01B12", mResult));
+    }
+
+    @Test
+    public void resultIsReused()
+    {
+        assertTrue(mParser.parse("C000123C021000021A123456789C01", mResult));
+        assertTrue(mParser.parse("A011000015A987C", mResult));
+        assertEquals("011000015", mResult.routing.toString());
+        assertEquals("987", mResult.account.toString());
+        assertEquals(0, mResult.cheque.length());
+        assertEquals(0, mResult.transactionCode.length());
+    }
+
+    @Test
+    public void abaChecksum()
+    {
+        assertTrue(MicrLineParser.isValidRouting("021000021"));
+        assertTrue(MicrLineParser.isValidRouting("011000015"));
+        assertFalse(MicrLineParser.isValidRouting("011000016"));
+        assertFalse(MicrLineParser.isValidRouting("01100001A"));
+    }
+}
@@ -0,0 +1,133 @@
+package com.senarios.checksandcards.TessTool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the trained data installation of {@link TessDataManager}.
+ */
+public class TessDataManagerTest
+{
+    private File mFolder;
+
+    private File mModel;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mFolder = File.createTempFile("tessdata", "");
+        assertTrue(mFolder.delete());
+        assertTrue(mFolder.mkdirs());
+        mModel = new File(mFolder, "mcr.traineddata");
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : mFolder.listFiles())
+        {
+            file.delete();
+        }
+        mFolder.delete();
+    }
+
+    @Test
+    public void installsStreamedCopyWithMarker() throws IOException
+    {
+        byte[] data = model(200000);
+        TessDataManager.install(new ByteArrayInputStream(data), mModel, "1-100");
+
+        assertArrayEquals(data, read(mModel));
+        assertTrue(TessDataManager.isInstalled(mModel, "1-100"));
+        // Recorded as hexadecimal
+        assertEquals(64, TessDataManager.getInstalledSha256(mModel)
+                                        .length());
+        // Only the model and its marker remain
+        assertEquals(2, mFolder.listFiles().length);
+    }
+
+    @Test
+    public void recordsTheSha256OfTheModel() throws IOException
+    {
+        TessDataManager.install(new ByteArrayInputStream("abc".getBytes("US-ASCII")), mModel,
+                                "1-100");
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                     TessDataManager.getInstalledSha256(mModel));
+    }
+
+    @Test
+    public void modelFromAnotherBuildIsStale() throws IOException
+    {
+        TessDataManager.install(new ByteArrayInputStream(model(1000)), mModel, "1-100");
+        assertFalse(TessDataManager.isInstalled(mModel, "2-200"));
+    }
+
+    @Test
+    public void truncatedModelIsNotInstalled() throws IOException
+    {
+        TessDataManager.install(new ByteArrayInputStream(model(1000)), mModel, "1-100");
+        RandomAccessFile file = new RandomAccessFile(mModel, "rw");
+        file.setLength(500);
+        file.close();
+        assertFalse(TessDataManager.isInstalled(mModel, "1-100"));
+    }
+
+    @Test
+    public void modelWithoutMarkerIsNotInstalled() throws IOException
+    {
+        // E.g. copied by an earlier version, or interrupted before the marker was written
+        FileOutputStream out = new FileOutputStream(mModel);
+        out.write(model(1000));
+        out.close();
+        assertFalse(TessDataManager.isInstalled(mModel, "1-100"));
+    }
+
+    @Test
+    public void reinstallReplacesTheModel() throws IOException
+    {
+        TessDataManager.install(new ByteArrayInputStream(model(1000)), mModel, "1-100");
+        byte[] update = model(3000);
+        update[0] = 42;
+        TessDataManager.install(new ByteArrayInputStream(update), mModel, "2-200");
+
+        assertArrayEquals(update, read(mModel));
+        assertTrue(TessDataManager.isInstalled(mModel, "2-200"));
+    }
+
+    private static byte[] model(int length)
+    {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            data[i] = (byte)(i * 31 + (i >> 8));
+        }
+        return data;
+    }
+
+    private static byte[] read(File file) throws IOException
+    {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try
+        {
+            byte[] data = new byte[(int)in.length()];
+            in.readFully(data);
+            return data;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
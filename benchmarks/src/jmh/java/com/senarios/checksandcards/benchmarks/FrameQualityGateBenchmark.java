@@ -0,0 +1,67 @@
+package com.senarios.checksandcards.benchmarks;
+
+import com.senarios.checksandcards.Scanning.FrameQualityGate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import leadtools.camera.YuvConverter;
+
+/**
+ * The per-frame cost of the quality gate on the frame thread: subsampling the search area of a
+ * 1080p frame to 256 columns and scoring it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameQualityGateBenchmark
+{
+    private static final int FRAME_WIDTH = 1920;
+
+    private static final int FRAME_HEIGHT = 1080;
+
+    private static final int AREA_LEFT = 128;
+
+    private static final int AREA_TOP = 700;
+
+    private static final int AREA_WIDTH = 1664;
+
+    private static final int AREA_HEIGHT = 300;
+
+    private static final int STEP = AREA_WIDTH / 256;
+
+    private ByteBuffer mPlane;
+
+    private byte[] mSample;
+
+    private final FrameQualityGate mGate = new FrameQualityGate();
+
+    @Setup
+    public void setUp()
+    {
+        byte[] luma = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        for (int i = 0; i < luma.length; i++)
+        {
+            luma[i] = (byte)(i % 12 < 7 ? 40 : 200);
+        }
+        mPlane = ByteBuffer.allocateDirect(luma.length);
+        mPlane.put(luma);
+        mSample = new byte[(AREA_WIDTH / STEP) * (AREA_HEIGHT / STEP)];
+    }
+
+    @Benchmark
+    public int subsampleAndEvaluate()
+    {
+        YuvConverter.extractLumaSubsampled(mPlane, FRAME_WIDTH, 1, AREA_LEFT, AREA_TOP,
+                                           AREA_WIDTH, AREA_HEIGHT, STEP, mSample);
+        return mGate.evaluate(mSample, AREA_WIDTH / STEP, AREA_HEIGHT / STEP);
+    }
+}
@@ -0,0 +1,60 @@
+package com.senarios.checksandcards.benchmarks;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Synthetic YUV_420_888 frames laid out like camera images: rows padded to a 64 byte stride and
+ * chroma planes interleaved (pixel stride 2), as most devices deliver them.
+ */
+final class FrameSizes
+{
+    static final String HD_720 = "1280x720";
+    static final String HD_1080 = "1920x1080";
+    static final String MP_2 = "1600x1200";
+
+    final int width;
+    final int height;
+    final int yRowStride;
+    final int chromaRowStride;
+    final ByteBuffer y;
+    final ByteBuffer u;
+    final ByteBuffer v;
+
+    FrameSizes(String size)
+    {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        yRowStride = align(width);
+        chromaRowStride = align(width);
+
+        byte[] luma = new byte[yRowStride * height];
+        for (int i = 0; i < luma.length; i++)
+        {
+            luma[i] = (byte)(i * 31);
+        }
+        // U and V share one interleaved buffer, V one byte ahead of U
+        int chromaHeight = (height + 1) / 2;
+        byte[] chroma = new byte[chromaRowStride * chromaHeight];
+        for (int i = 0; i < chroma.length; i++)
+        {
+            chroma[i] = (byte)(i * 17);
+        }
+        y = ByteBuffer.allocateDirect(luma.length);
+        y.put(luma);
+        y.clear();
+        ByteBuffer vu = ByteBuffer.allocateDirect(chroma.length);
+        vu.put(chroma);
+        vu.clear();
+        vu.position(1);
+        u = vu.slice();
+        vu.position(0);
+        vu.limit(chroma.length - 1);
+        v = vu.slice();
+    }
+
+    private static int align(int width)
+    {
+        return (width + 63) & ~63;
+    }
+}
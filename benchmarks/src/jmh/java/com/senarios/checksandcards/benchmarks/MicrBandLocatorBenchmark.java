@@ -0,0 +1,86 @@
+package com.senarios.checksandcards.benchmarks;
+
+import com.senarios.checksandcards.Scanning.MicrBandLocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locating the MICR line in the search area of a frame, with a line of character-like blocks and
+ * with blank paper, the case that saves a recognition.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MicrBandLocatorBenchmark
+{
+    /**
+     * Search areas of a 720p and a 1080p frame: the guide width by two fifths of its height
+     */
+    @Param({ "1110x200", "1660x300" })
+    public String size;
+
+    private int mWidth;
+
+    private int mHeight;
+
+    private byte[] mLine;
+
+    private byte[] mBlank;
+
+    private final MicrBandLocator mLocator = new MicrBandLocator();
+
+    private final MicrBandLocator.Band mBand = new MicrBandLocator.Band();
+
+    @Setup
+    public void setUp()
+    {
+        String[] parts = size.split("x");
+        mWidth = Integer.parseInt(parts[0]);
+        mHeight = Integer.parseInt(parts[1]);
+        mBlank = new byte[mWidth * mHeight];
+        for (int i = 0; i < mBlank.length; i++)
+        {
+            mBlank[i] = (byte)(198 + i * 7919 % 5);
+        }
+        mLine = mBlank.clone();
+        int top = mHeight * 5 / 8;
+        int bottom = top + mHeight / 8;
+        for (int y = top; y < bottom; y++)
+        {
+            for (int x = mWidth / 10; x < mWidth * 9 / 10; x++)
+            {
+                if (x % 12 < 7)
+                    mLine[y * mWidth + x] = 30;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean locateLine()
+    {
+        return mLocator.locate(mLine, mWidth, mHeight, mBand);
+    }
+
+    @Benchmark
+    public boolean locateBlank()
+    {
+        return mLocator.locate(mBlank, mWidth, mHeight, mBand);
+    }
+
+    @Benchmark
+    public byte[] locateAndCrop()
+    {
+        if (!mLocator.locate(mLine, mWidth, mHeight, mBand))
+            return null;
+        return MicrBandLocator.crop(mLine, mWidth, mBand);
+    }
+}
@@ -0,0 +1,60 @@
+package com.senarios.checksandcards.benchmarks;
+
+import com.senarios.checksandcards.Scanning.MicrConsensus;
+import com.senarios.checksandcards.Scanning.MicrLineParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and voting on Tesseract output as it arrives from the engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MicrParsingBenchmark
+{
+    private static final String VALID = "C000123C 021000021A 123456789C\n";
+
+    private static final String BAD_CHECKSUM = "C000123C 021000022A 123456789C\n";
+
+    private static final String NOISE = "1C0A0D3 C8 A\n";
+
+    private final MicrLineParser mParser = new MicrLineParser();
+
+    private final MicrLineParser.Result mResult = new MicrLineParser.Result();
+
+    private final MicrConsensus mConsensus = new MicrConsensus(3, 5);
+
+    @Benchmark
+    public boolean parseValid()
+    {
+        return mParser.parse(VALID, mResult);
+    }
+
+    @Benchmark
+    public boolean parseBadChecksum()
+    {
+        return mParser.parse(BAD_CHECKSUM, mResult);
+    }
+
+    @Benchmark
+    public boolean parseNoise()
+    {
+        return mParser.parse(NOISE, mResult);
+    }
+
+    @Benchmark
+    public String parseAndVote()
+    {
+        if (!mParser.parse(VALID, mResult))
+            return null;
+        return mConsensus.offer(mResult.line);
+    }
+}
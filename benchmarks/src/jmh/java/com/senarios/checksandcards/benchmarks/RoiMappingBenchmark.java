@@ -0,0 +1,49 @@
+package com.senarios.checksandcards.benchmarks;
+
+import com.senarios.checksandcards.LeadRect;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping the MICR band from view to frame coordinates, as done by OverlayView.updateArea.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoiMappingBenchmark
+{
+    private static final int VIEW_WIDTH = 2034;
+
+    private static final int VIEW_HEIGHT = 1144;
+
+    @Param({ FrameSizes.HD_720, FrameSizes.HD_1080, FrameSizes.MP_2 })
+    public String size;
+
+    private int mFrameWidth;
+
+    private int mFrameHeight;
+
+    @Setup
+    public void setUp()
+    {
+        String[] parts = size.split("x");
+        mFrameWidth = Integer.parseInt(parts[0]);
+        mFrameHeight = Integer.parseInt(parts[1]);
+    }
+
+    @Benchmark
+    public LeadRect mapMicrBand()
+    {
+        return LeadRect.mapToFrame(135, 870, 1899, 1030, VIEW_WIDTH, VIEW_HEIGHT, mFrameWidth,
+                                   mFrameHeight);
+    }
+}
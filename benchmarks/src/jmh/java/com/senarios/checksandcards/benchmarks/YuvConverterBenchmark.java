@@ -0,0 +1,93 @@
+package com.senarios.checksandcards.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import leadtools.camera.YuvConverter;
+
+/**
+ * Full frame NV21 conversion against the MICR band crop that the scanner actually performs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConverterBenchmark
+{
+    @Param({ FrameSizes.HD_720, FrameSizes.HD_1080, FrameSizes.MP_2 })
+    public String size;
+
+    private FrameSizes mFrame;
+
+    private byte[] mNv21;
+
+    private byte[] mLuma;
+
+    private byte[] mBand;
+
+    private int mBandLeft;
+
+    private int mBandTop;
+
+    private int mBandWidth;
+
+    private int mBandHeight;
+
+    @Setup
+    public void setUp()
+    {
+        mFrame = new FrameSizes(size);
+        mNv21 = new byte[YuvConverter.nv21Size(mFrame.width, mFrame.height)];
+        mLuma = new byte[mFrame.width * mFrame.height];
+        // Same proportions as the MICR band of OverlayView
+        mBandLeft = mFrame.width / 15;
+        mBandWidth = mFrame.width - 2 * mBandLeft;
+        mBandHeight = mFrame.height / 7;
+        mBandTop = mFrame.height - mFrame.height / 15 - mBandHeight;
+        mBand = new byte[mBandWidth * mBandHeight];
+    }
+
+    @Benchmark
+    public byte[] toNV21()
+    {
+        YuvConverter.toNV21(mFrame.y, mFrame.yRowStride, 1,
+                            mFrame.u, mFrame.chromaRowStride, 2,
+                            mFrame.v, mFrame.chromaRowStride, 2,
+                            mFrame.width, mFrame.height, mNv21);
+        return mNv21;
+    }
+
+    @Benchmark
+    public byte[] extractFullLuma()
+    {
+        YuvConverter.extractLuma(mFrame.y, mFrame.yRowStride, 1, mFrame.width, mFrame.height,
+                                 mLuma);
+        return mLuma;
+    }
+
+    @Benchmark
+    public byte[] extractMicrBand()
+    {
+        YuvConverter.extractLuma(mFrame.y, mFrame.yRowStride, 1, mBandLeft, mBandTop, mBandWidth,
+                                 mBandHeight, mBand);
+        return mBand;
+    }
+
+    /**
+     * The band copy when the luma plane is not packed, which takes the per-pixel path.
+     */
+    @Benchmark
+    public byte[] extractMicrBandStrided()
+    {
+        YuvConverter.extractLuma(mFrame.u, mFrame.chromaRowStride, 2, mBandLeft / 2, mBandTop / 2,
+                                 mBandWidth / 2, mBandHeight / 2, mBand);
+        return mBand;
+    }
+}
@@ -0,0 +1,83 @@
+package leadtools.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link SizeMap} work of every camera start: grouping the supported sizes by aspect ratio,
+ * checking the requested ratio and picking the continuous frame size within the max preview size.
+ * In this package because {@link SizeMap} is package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SizeMapBenchmark
+{
+    /**
+     * Preview sizes as reported by a typical back camera
+     */
+    private static final Size[] SIZES = {
+            new Size(4032, 3024), new Size(4032, 2268), new Size(3840, 2160),
+            new Size(3264, 2448), new Size(3264, 1836), new Size(2592, 1944),
+            new Size(2560, 1440), new Size(2048, 1536), new Size(1920, 1440),
+            new Size(1920, 1080), new Size(1600, 1200), new Size(1440, 1080),
+            new Size(1280, 960), new Size(1280, 720), new Size(1024, 768),
+            new Size(960, 720), new Size(800, 600), new Size(720, 480),
+            new Size(640, 480), new Size(352, 288), new Size(320, 240),
+            new Size(176, 144) };
+
+    private static final AspectRatio RATIO = AspectRatio.of(16, 9);
+
+    private static final float MAX_PREVIEW_SIZE_MP = 1.0f;
+
+    private SizeMap mSizes;
+
+    @Setup
+    public void setUp()
+    {
+        mSizes = fill(new SizeMap());
+    }
+
+    @Benchmark
+    public SizeMap fillSizes()
+    {
+        return fill(new SizeMap());
+    }
+
+    @Benchmark
+    public boolean containsRatio()
+    {
+        return mSizes.ratios()
+                     .contains(RATIO);
+    }
+
+    @Benchmark
+    public Size chooseFrameSize()
+    {
+        SortedSet<Size> sizes = mSizes.sizes(RATIO);
+        Size best = null;
+        for (Size size : sizes)
+        {
+            if (size.getWidth() * size.getHeight() / 1000000.0f <= MAX_PREVIEW_SIZE_MP)
+                best = size;
+        }
+        return best != null ? best : sizes.last();
+    }
+
+    private static SizeMap fill(SizeMap sizes)
+    {
+        for (Size size : SIZES)
+        {
+            sizes.add(size);
+        }
+        return sizes;
+    }
+}